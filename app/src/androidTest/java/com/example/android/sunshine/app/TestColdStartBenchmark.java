@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    How long MainActivity takes from being launched to drawing its first forecast row, with a
+    couple of weeks of forecast in the database.  Each run starts a new task, so the activity,
+    its fragments and loaders start from nothing; the process, and with it the database and
+    the process-wide caches, is already running, as instrumentation needs it to be.  The times
+    of StartupTasks' milestones go to the log with it; the test only fails if the list never
+    shows up.
+ */
+public class TestColdStartBenchmark extends InstrumentationTestCase {
+
+    public static final String LOG_TAG = TestColdStartBenchmark.class.getSimpleName();
+
+    private static final int RUNS = 5;
+    private static final int DAYS = 14;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static final long MILLIS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    private Context mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        deleteAllRecords();
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, Utility.getPreferredLocation(mContext));
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+        long locationId = ContentUris.parseId(locationUri);
+
+        ContentValues[] days = new ContentValues[DAYS];
+        long date = System.currentTimeMillis();
+        for (int i = 0; i < DAYS; i++, date += MILLIS_IN_A_DAY) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            day.put(WeatherEntry.COLUMN_DATE, date);
+            day.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 10 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, i - 5);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clouds");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            days[i] = day;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testTimeToFirstForecastRow() throws Throwable {
+        long[] launchToRow = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            Intent intent = new Intent(mContext, MainActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            long launched = SystemClock.uptimeMillis();
+            final MainActivity activity =
+                    (MainActivity) getInstrumentation().startActivitySync(intent);
+            try {
+                final long[] milestones = new long[4];
+                long deadline = launched + TIMEOUT_MILLIS;
+                // Wait for the first row and for the deferred work, so runs don't overlap
+                do {
+                    assertTrue("Error: no forecast row was drawn",
+                            SystemClock.uptimeMillis() < deadline);
+                    SystemClock.sleep(10);
+                    getInstrumentation().waitForIdleSync();
+                    getInstrumentation().runOnMainSync(new Runnable() {
+                        @Override
+                        public void run() {
+                            StartupTasks startup = activity.getStartupTasks();
+                            milestones[0] = startup.getCreatedUptime();
+                            milestones[1] = startup.getFirstFrameUptime();
+                            milestones[2] = startup.getFirstForecastRowUptime();
+                            milestones[3] = startup.getBackgroundDoneUptime();
+                        }
+                    });
+                } while (milestones[2] == -1 || milestones[3] == -1);
+                launchToRow[run] = milestones[2] - launched;
+                Log.i(LOG_TAG, "Run " + run + ": launch to onCreate " + (milestones[0] - launched) +
+                        " ms, first frame " + (milestones[1] - launched) +
+                        " ms, first forecast row " + launchToRow[run] +
+                        " ms, deferred work done " + (milestones[3] - launched) + " ms");
+            } finally {
+                activity.finish();
+                getInstrumentation().waitForIdleSync();
+            }
+        }
+
+        long total = 0, best = Long.MAX_VALUE;
+        for (long millis : launchToRow) {
+            total += millis;
+            best = Math.min(best, millis);
+        }
+        Log.i(LOG_TAG, "Launch to first forecast row, " + RUNS + " runs: mean " + total / RUNS +
+                " ms, best " + best + " ms");
+    }
+}
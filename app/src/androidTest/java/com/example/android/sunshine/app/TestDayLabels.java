@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.text.SimpleDateFormat;
+
+public class TestDayLabels extends AndroidTestCase {
+
+    private static final long MILLIS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    @Override
+    protected void tearDown() throws Exception {
+        DayLabels.invalidate();
+        super.tearDown();
+    }
+
+    public void testLabels() {
+        long now = System.currentTimeMillis();
+        String today = mContext.getString(R.string.today);
+        String monthDay = new SimpleDateFormat("MMMM dd").format(now);
+
+        assertEquals(today, Utility.getDayName(mContext, now));
+        assertEquals(mContext.getString(R.string.tomorrow),
+                Utility.getDayName(mContext, now + MILLIS_IN_A_DAY));
+        assertEquals(mContext.getString(R.string.format_full_friendly_date, today, monthDay),
+                Utility.getFriendlyDayString(mContext, now, true));
+        assertEquals(today, Utility.getFriendlyDayString(mContext, now, false));
+        assertEquals(new SimpleDateFormat("EEEE").format(now + 3 * MILLIS_IN_A_DAY),
+                Utility.getFriendlyDayString(mContext, now + 3 * MILLIS_IN_A_DAY, false));
+        // Past the window, labels are formatted but not cached
+        long later = now + 30 * MILLIS_IN_A_DAY;
+        assertEquals(new SimpleDateFormat("EEE MMM dd").format(later),
+                Utility.getFriendlyDayString(mContext, later, false));
+    }
+
+    public void testCachedUntilInvalidated() {
+        long now = System.currentTimeMillis();
+        DayLabels.warm(mContext);
+        String label = Utility.getFullFriendlyDayString(mContext, now + 2 * MILLIS_IN_A_DAY);
+        assertSame("Error: a warm label was formatted again", label,
+                Utility.getFullFriendlyDayString(mContext, now + 2 * MILLIS_IN_A_DAY));
+
+        DayLabels.invalidate();
+        String relabel = Utility.getFullFriendlyDayString(mContext, now + 2 * MILLIS_IN_A_DAY);
+        assertNotSame("Error: the cache outlived its invalidation", label, relabel);
+        assertEquals(label, relabel);
+    }
+}
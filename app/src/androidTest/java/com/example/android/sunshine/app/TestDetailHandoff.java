@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.List;
+
+public class TestDetailHandoff extends AndroidTestCase {
+
+    private static final long TEST_DATE = 1419033600L;  // December 20th, 2014
+
+    // Tied to the ForecastFragment.COL_* indices
+    private static final String[] FORECAST_COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long", "humidity", "pressure", "wind", "degrees"
+    };
+
+    // The list reads everything the detail view shows of a day
+    public void testListRowCarriesTheDetail() {
+        MatrixCursor cursor = new MatrixCursor(FORECAST_COLUMNS, 1);
+        cursor.addRow(new Object[]{1, TEST_DATE, "Clouds", 21.5, 12.25, "99705", 803,
+                64.7488, -147.353, 81.0, 1012.5, 5.5, 270.0});
+        List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+
+        assertEquals(new DayDetail(TEST_DATE, 803, 21.5, 12.25, 81f, 1012.5f, 5.5f, 270f),
+                rows.get(0).detail);
+    }
+
+    public void testHandoffIsKeyedByUri() {
+        DayDetail day = new DayDetail(TEST_DATE, 800, 20, 10, 50, 1000, 2, 180);
+        Uri uri = WeatherEntry.buildWeatherLocationWithDate("99705", TEST_DATE);
+        DetailHandoff.put(uri, day);
+
+        // The detail view gets the Uri back through a Parcel, so an equal Uri has to do
+        assertSame(day, DetailHandoff.get(Uri.parse(uri.toString())));
+        assertNull(DetailHandoff.get(
+                WeatherEntry.buildWeatherLocationWithDate("99705", TEST_DATE + 1)));
+        assertNull(DetailHandoff.get(null));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    What binding a forecast row costs on the main thread.  Formatting a row (the dates, the
+    temperatures, the preference reads and the accessibility strings) used to happen in every
+    onBindViewHolder; it now happens once per row in ForecastLoader, off the main thread, and a
+    bind only copies the results into the views.  Both costs go to the log; the test only fails
+    if a bound view doesn't show its row.
+ */
+public class TestForecastBindBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastBindBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 28;
+    private static final int FORMAT_RUNS = 50;
+    private static final int BIND_RUNS = 50;
+
+    private static final long MILLIS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    // Tied to the ForecastFragment.COL_* indices
+    private static final String[] FORECAST_COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long", "humidity", "pressure", "wind", "degrees"
+    };
+
+    private MatrixCursor mCursor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCursor = new MatrixCursor(FORECAST_COLUMNS, ROWS);
+        long date = System.currentTimeMillis();
+        for (int i = 0; i < ROWS; i++, date += MILLIS_IN_A_DAY) {
+            mCursor.addRow(new Object[]{i, date, "Clouds", 10 + (i * 13) % 25, -5 + (i * 11) % 15,
+                    "99705", 800 + i % 5, 64.7488, -147.353, 80, 1010, 5.5, 90});
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCursor.close();
+        super.tearDown();
+    }
+
+    public void testBindCost() throws Throwable {
+        long formatStart = System.nanoTime();
+        List<ForecastRow> rows = null;
+        for (int run = 0; run < FORMAT_RUNS; run++) {
+            rows = ForecastRow.fromCursor(mContext, mCursor);
+        }
+        long formatNanos = (System.nanoTime() - formatStart) / (FORMAT_RUNS * ROWS);
+        assertEquals(ROWS, rows.size());
+
+        final List<ForecastRow> boundRows = rows;
+        final long[] bindNanos = new long[1];
+        // Views, and Glide when an art pack is chosen, want the main thread
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                ContextThemeWrapper context = new ContextThemeWrapper(mContext, R.style.AppTheme);
+                RecyclerView recyclerView = new RecyclerView(context);
+                ForecastAdapter adapter = new ForecastAdapter(context, null, new View(context),
+                        AbsListView.CHOICE_MODE_NONE);
+                adapter.swapRows(boundRows);
+                ForecastAdapter.ForecastAdapterViewHolder today =
+                        adapter.onCreateViewHolder(recyclerView, adapter.getItemViewType(0));
+                ForecastAdapter.ForecastAdapterViewHolder future =
+                        adapter.onCreateViewHolder(recyclerView, adapter.getItemViewType(1));
+
+                long bindStart = System.nanoTime();
+                for (int run = 0; run < BIND_RUNS; run++) {
+                    adapter.onBindViewHolder(today, 0);
+                    for (int position = 1; position < ROWS; position++) {
+                        adapter.onBindViewHolder(future, position);
+                    }
+                }
+                bindNanos[0] = (System.nanoTime() - bindStart) / (BIND_RUNS * ROWS);
+
+                assertEquals(boundRows.get(0).longDay, today.mDateView.getText().toString());
+                ForecastRow last = boundRows.get(ROWS - 1);
+                assertEquals(last.day, future.mDateView.getText().toString());
+                assertEquals(last.high, future.mHighTempView.getText().toString());
+                assertEquals(last.lowA11y, future.mLowTempView.getContentDescription());
+            }
+        });
+
+        Log.i(LOG_TAG, "Per row: formatting " + formatNanos / 1000 + " us (once per load, " +
+                "in the background), binding " + bindNanos[0] / 1000 + " us (main thread)");
+    }
+
+    private static void runOnMainThread(final Runnable runnable) throws Throwable {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue("Error: the main thread didn't run the binds", done.await(60, TimeUnit.SECONDS));
+        if (null != failure[0]) throw failure[0];
+    }
+}
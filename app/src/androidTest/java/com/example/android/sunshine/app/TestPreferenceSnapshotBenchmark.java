@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/*
+    Reads the preferences a list row, a widget row and a sync need (location, units, art pack
+    and location status) the way Utility used to, through SharedPreferences and resources on
+    every call, and through PreferenceSnapshot.  The timings go to the log; the test only fails
+    if the two disagree.
+ */
+public class TestPreferenceSnapshotBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestPreferenceSnapshotBenchmark.class.getSimpleName();
+
+    private static final int RUNS = 100000;
+
+    public void testSnapshotAgainstSharedPreferences() {
+        // Both sides start warm: the preferences file loaded, the snapshot taken
+        PreferenceSnapshot.refresh(mContext);
+
+        int checksum = 0;
+        long lookupStart = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            checksum += lookUp(mContext);
+        }
+        long lookupNanos = (System.nanoTime() - lookupStart) / RUNS;
+
+        int snapshotChecksum = 0;
+        long snapshotStart = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            snapshotChecksum += readSnapshot(mContext);
+        }
+        long snapshotNanos = (System.nanoTime() - snapshotStart) / RUNS;
+
+        Log.i(LOG_TAG, "Four preferences, " + RUNS + " runs: SharedPreferences " + lookupNanos +
+                " ns, snapshot " + snapshotNanos + " ns per read");
+        assertEquals("Error: the snapshot doesn't hold the preferences", checksum,
+                snapshotChecksum);
+    }
+
+    public void testSnapshotFollowsChanges() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_location_key);
+        String saved = prefs.getString(key, null);
+        try {
+            prefs.edit().putString(key, "snapshot-test").commit();
+            PreferenceSnapshot.refresh(mContext);
+            assertEquals("snapshot-test", Utility.getPreferredLocation(mContext));
+        } finally {
+            if (null == saved) {
+                prefs.edit().remove(key).commit();
+            } else {
+                prefs.edit().putString(key, saved).commit();
+            }
+            PreferenceSnapshot.refresh(mContext);
+        }
+    }
+
+    // What getPreferredLocation, isMetric, getArtUrlForWeatherCondition and getLocationStatus
+    // used to do, each on its own
+    private static int lookUp(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean isMetric = prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        int status = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        return location.hashCode() + (isMetric ? 1 : 0) + artPack.hashCode() + status;
+    }
+
+    private static int readSnapshot(Context context) {
+        PreferenceSnapshot snapshot = PreferenceSnapshot.get(context);
+        return snapshot.locationSetting.hashCode() + (snapshot.isMetric ? 1 : 0) +
+                snapshot.artPack.hashCode() + snapshot.locationStatus;
+    }
+}
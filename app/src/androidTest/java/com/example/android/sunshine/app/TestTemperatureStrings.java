@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+public class TestTemperatureStrings extends AndroidTestCase {
+
+    // Stored temperatures have one decimal
+    private static final int MIN_TENTHS = -900;
+    private static final int MAX_TENTHS = 700;
+
+    // The table has to print exactly what String.format did, "-0" and all
+    public void testSameAsStringFormat() {
+        String format = mContext.getString(R.string.format_temperature);
+        for (int tenths = MIN_TENTHS; tenths <= MAX_TENTHS; tenths++) {
+            double celsius = tenths / 10.0;
+            assertEquals(String.format(format, celsius),
+                    Utility.formatTemperature(mContext, celsius, true));
+            assertEquals(String.format(format, celsius * 1.8 + 32),
+                    Utility.formatTemperature(mContext, celsius, false));
+        }
+        assertEquals(String.format(format, 1000.0),
+                Utility.formatTemperature(mContext, 1000.0, true));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testFormattingDoesNotAllocate() {
+        // Warm up: the preference snapshot and the table for this locale
+        Utility.formatTemperature(mContext, 0.5);
+        Utility.formatTemperature(mContext, 0.5, false);
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            for (int tenths = MIN_TENTHS; tenths <= MAX_TENTHS; tenths += 7) {
+                // Skip the few that print as "-0", which still go through String.format
+                if (tenths < 0 && tenths > -5) continue;
+                Utility.formatTemperature(mContext, tenths / 10.0);
+                Utility.formatTemperature(mContext, tenths / 10.0, true);
+            }
+            assertEquals("Error: formatting temperatures allocated", 0,
+                    Debug.getThreadAllocCount());
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
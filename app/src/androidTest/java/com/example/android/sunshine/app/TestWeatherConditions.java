@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.conditions.WeatherConditions;
+
+/*
+    The app's table of description strings has to follow the description indexes of the
+    conditions module; this catches the two drifting apart.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public void testDescriptionStrings() {
+        for (int i = 0; i < WeatherConditions.DESCRIPTION_COUNT; i++) {
+            String key = WeatherConditions.descriptionKey(i);
+            // The groups are described by any of their codes
+            int weatherId = key.equals("2xx") ? 211 : key.equals("3xx") ? 301 : Integer.parseInt(key);
+            int stringId = mContext.getResources().getIdentifier("condition_" + key, "string",
+                    mContext.getPackageName());
+            assertTrue("Error: no string for condition " + key, stringId != 0);
+            assertEquals("Error: condition " + weatherId + " has the wrong description",
+                    mContext.getString(stringId),
+                    Utility.getStringForWeatherCondition(mContext, weatherId));
+        }
+        assertEquals(mContext.getString(R.string.condition_unknown, 999),
+                Utility.getStringForWeatherCondition(mContext, 999));
+    }
+
+    public void testResources() {
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(781));
+        assertEquals(R.drawable.art_fog, Utility.getArtResourceForWeatherCondition(761));
+        assertEquals(R.drawable.ic_cloudy, Utility.getIconResourceForWeatherCondition(803));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(900));
+        assertEquals(-1, Utility.getArtResourceForWeatherCondition(-1));
+        assertNull(Utility.getImageUrlForWeatherCondition(1200));
+    }
+}
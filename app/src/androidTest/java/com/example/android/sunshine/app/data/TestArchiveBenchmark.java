@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+/*
+    Exports a large database to an archive and imports it again: archive size per row against
+    the database file, and the time each way.  The figures go to the log; the test only fails
+    if rows are lost on the way.
+ */
+public class TestArchiveBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestArchiveBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int DAYS = 10000;
+
+    private File mArchive;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mArchive = new File(mContext.getCacheDir(), "benchmark.archive");
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        for (int i = 0; i < LOCATIONS; i++) {
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "archive-" + i);
+            long locationRowId = db.insert(LocationEntry.TABLE_NAME, null, location);
+            TestUtilities.insertSyntheticHistory(db, locationRowId, TestUtilities.TEST_DATE, DAYS);
+        }
+        db.execSQL("VACUUM");
+        dbHelper.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mArchive.delete();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testExportImport() throws Exception {
+        long databaseBytes = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).length();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long exportStart = SystemClock.elapsedRealtime();
+        FileOutputStream out = new FileOutputStream(mArchive);
+        WeatherArchive.Counts exported;
+        try {
+            exported = WeatherArchive.write(db, out.getChannel());
+        } finally {
+            out.close();
+        }
+        long exportMillis = SystemClock.elapsedRealtime() - exportStart;
+
+        long importStart = SystemClock.elapsedRealtime();
+        FileInputStream in = new FileInputStream(mArchive);
+        WeatherArchive.Counts imported;
+        try {
+            imported = WeatherArchive.read(db, in.getChannel());
+        } finally {
+            in.close();
+        }
+        long importMillis = SystemClock.elapsedRealtime() - importStart;
+
+        long rows = (long) LOCATIONS * DAYS;
+        Log.i(LOG_TAG, rows + " weather rows: database " + databaseBytes + " bytes, archive " +
+                mArchive.length() + " bytes (" + (mArchive.length() / rows) +
+                " per row), export " + exportMillis + " ms, import " + importMillis + " ms");
+
+        assertEquals("Error: the export lost rows", rows, exported.weather);
+        assertEquals("Error: the import lost rows", rows, imported.weather);
+        assertEquals(LOCATIONS, imported.locations);
+        assertEquals("Error: the database doesn't hold what was imported", rows,
+                DatabaseUtils.longForQuery(db,
+                        "SELECT COUNT(*) FROM " + WeatherEntry.TABLE_NAME, null));
+        dbHelper.close();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares reading one day's conditions through WeatherContract.METHOD_GET_CONDITIONS against
+    the query() it replaces.  The timings go to the log; the test only fails if the two paths
+    disagree.
+ */
+public class TestCallBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestCallBenchmark.class.getSimpleName();
+
+    private static final int RUNS = 1000;
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mToday = System.currentTimeMillis();
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, mToday);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testCallAgainstQuery() {
+        // ContentResolver.call doesn't exist before Honeycomb
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) return;
+
+        CurrentConditions queried = null;
+        long queryStart = SystemClock.elapsedRealtime();
+        for (int run = 0; run < RUNS; run++) {
+            queried = CurrentConditions.fromQuery(mContext, TestUtilities.TEST_LOCATION, mToday);
+        }
+        long queryMillis = SystemClock.elapsedRealtime() - queryStart;
+
+        CurrentConditions called = null;
+        long callStart = SystemClock.elapsedRealtime();
+        for (int run = 0; run < RUNS; run++) {
+            called = CurrentConditions.fromCall(mContext, TestUtilities.TEST_LOCATION, mToday);
+        }
+        long callMillis = SystemClock.elapsedRealtime() - callStart;
+
+        Log.i(LOG_TAG, "Today's conditions, " + RUNS + " runs: query " + queryMillis +
+                " ms, call " + callMillis + " ms");
+
+        assertNotNull("Error: query didn't find today's weather", queried);
+        assertNotNull("Error: call didn't find today's weather", called);
+        assertEquals(queried.date, called.date);
+        assertEquals(queried.weatherId, called.weatherId);
+        assertEquals(queried.maxTemp, called.maxTemp, 0);
+        assertEquals(queried.minTemp, called.minTemp, 0);
+        assertEquals(queried.description, called.description);
+
+        assertNull("Error: call should return null for a day without weather",
+                CurrentConditions.fromCall(mContext, TestUtilities.TEST_LOCATION,
+                        mToday + 30 * TestUtilities.MILLIS_IN_A_DAY));
+    }
+}
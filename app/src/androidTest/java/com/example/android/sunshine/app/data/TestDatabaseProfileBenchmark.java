@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+    Runs the app's database workloads under every combination of page size, cache size and
+    synchronous level, each on a freshly created database holding a few years of history:
+    the periodic sync write, the forecast list query, the widget's single day query and the
+    pruning of old days.  Throughput and latency percentiles go to the log, one line per
+    workload and profile, to pick DatabaseProfile.DEFAULT from.  The test only fails if a
+    workload reads back the wrong number of rows.
+ */
+public class TestDatabaseProfileBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDatabaseProfileBenchmark.class.getSimpleName();
+
+    private static final int[] PAGE_SIZES = {1024, 4096, 16384};
+    private static final int[] CACHE_SIZES_KB = {256, 1024, 8192};
+    private static final int[] SYNCHRONOUS_LEVELS = {
+            DatabaseProfile.SYNCHRONOUS_OFF,
+            DatabaseProfile.SYNCHRONOUS_NORMAL,
+            DatabaseProfile.SYNCHRONOUS_FULL
+    };
+
+    private static final int LOCATIONS = 5;
+    private static final int HISTORY_DAYS = 3650;
+    // The list shows two weeks, and a sync brings in as many
+    private static final int FORECAST_DAYS = 14;
+
+    private static final int SYNC_RUNS = 40;
+    private static final int LIST_RUNS = 200;
+    private static final int WIDGET_RUNS = 500;
+    private static final int PRUNE_RUNS = 20;
+    private static final int PRUNE_STEP_DAYS = 30;
+
+    // What the forecast list and the widget read
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    //location.location_setting = ? AND date >= ? AND date < ?
+    private static final String sListSelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " < ?";
+
+    //location.location_setting = ? AND date = ?
+    private static final String sDaySelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " = ?";
+
+    private SQLiteQueryBuilder mJoinedQueryBuilder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The same join the provider reads the forecast through
+        mJoinedQueryBuilder = new SQLiteQueryBuilder();
+        mJoinedQueryBuilder.setTables(WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                LocationEntry.TABLE_NAME + " ON " + WeatherEntry.TABLE_NAME + "." +
+                WeatherEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+                LocationEntry._ID);
+        mJoinedQueryBuilder.setProjectionMap(WeatherStorage.buildJoinedProjectionMap());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testProfileMatrix() {
+        for (int pageSize : PAGE_SIZES) {
+            for (int cacheSizeKb : CACHE_SIZES_KB) {
+                for (int synchronous : SYNCHRONOUS_LEVELS) {
+                    runWorkloads(new DatabaseProfile(pageSize, cacheSizeKb, synchronous,
+                            DatabaseProfile.TEMP_STORE_MEMORY));
+                }
+            }
+        }
+        runWorkloads(DatabaseProfile.DEFAULT);
+    }
+
+    private void runWorkloads(DatabaseProfile profile) {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, profile);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        // What the file really got, in case SQLite didn't take the profile's page size
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long[] locationIds = new long[LOCATIONS];
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        for (int i = 0; i < LOCATIONS; i++) {
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting(i));
+            locationIds[i] = db.insert(LocationEntry.TABLE_NAME, null, location);
+            TestUtilities.insertSyntheticHistory(db, locationIds[i], TestUtilities.TEST_DATE,
+                    HISTORY_DAYS);
+        }
+        // "Today" is late in the history, as it is for a device that has been syncing for years
+        long today = WeatherContract.normalizeDate(TestUtilities.TEST_DATE) +
+                (HISTORY_DAYS - FORECAST_DAYS) * TestUtilities.MILLIS_IN_A_DAY;
+
+        long[] latencies = new long[SYNC_RUNS];
+        HashMap<String, Long> conditionIds = new HashMap<String, Long>();
+        ContentValues day = TestUtilities.createWeatherValues(locationIds[0]);
+        for (int run = 0; run < SYNC_RUNS; run++) {
+            long start = System.nanoTime();
+            db.beginTransaction();
+            try {
+                long locationId = locationIds[run % LOCATIONS];
+                day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+                for (int i = 0; i < FORECAST_DAYS; i++) {
+                    day.put(WeatherEntry.COLUMN_DATE, today + i * TestUtilities.MILLIS_IN_A_DAY);
+                    day.put(WeatherEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+                    db.insert(WeatherEntry.TABLE_NAME, null,
+                            WeatherStorage.encode(db, day, conditionIds));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            latencies[run] = System.nanoTime() - start;
+        }
+        log(profile, pageSize, "sync write", latencies);
+
+        latencies = new long[LIST_RUNS];
+        for (int run = 0; run < LIST_RUNS; run++) {
+            long start = System.nanoTime();
+            Cursor cursor = mJoinedQueryBuilder.query(db, FORECAST_COLUMNS, sListSelection,
+                    new String[]{locationSetting(run % LOCATIONS), Long.toString(today),
+                            Long.toString(today + FORECAST_DAYS * TestUtilities.MILLIS_IN_A_DAY)},
+                    null, null, WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + " ASC");
+            int rows = readAll(cursor);
+            latencies[run] = System.nanoTime() - start;
+            assertEquals("Error: the list query read the wrong days", FORECAST_DAYS, rows);
+        }
+        log(profile, pageSize, "list query", latencies);
+
+        latencies = new long[WIDGET_RUNS];
+        for (int run = 0; run < WIDGET_RUNS; run++) {
+            long start = System.nanoTime();
+            Cursor cursor = mJoinedQueryBuilder.query(db, FORECAST_COLUMNS, sDaySelection,
+                    new String[]{locationSetting(run % LOCATIONS), Long.toString(today)},
+                    null, null, null);
+            int rows = readAll(cursor);
+            latencies[run] = System.nanoTime() - start;
+            assertEquals("Error: the widget query read the wrong day", 1, rows);
+        }
+        log(profile, pageSize, "widget query", latencies);
+
+        latencies = new long[PRUNE_RUNS];
+        long cutoff = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        for (int run = 0; run < PRUNE_RUNS; run++) {
+            cutoff += PRUNE_STEP_DAYS * TestUtilities.MILLIS_IN_A_DAY;
+            long start = System.nanoTime();
+            int rows = db.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[]{Long.toString(cutoff)});
+            latencies[run] = System.nanoTime() - start;
+            assertEquals("Error: pruning deleted the wrong days",
+                    LOCATIONS * PRUNE_STEP_DAYS + (run == 0 ? LOCATIONS : 0), rows);
+        }
+        log(profile, pageSize, "pruning", latencies);
+
+        dbHelper.close();
+    }
+
+    private static String locationSetting(int i) {
+        return "profile-" + i;
+    }
+
+    private static int readAll(Cursor cursor) {
+        int rows = 0;
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    cursor.getString(i);
+                }
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static void log(DatabaseProfile profile, long pageSize, String workload,
+                            long[] latencies) {
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        Log.i(LOG_TAG, profile + " (effective page_size " + pageSize + ") | " + workload +
+                ": " + String.format("%.0f", latencies.length * 1e9 / total) + " ops/s, p50 " +
+                sorted[sorted.length / 2] / 1000 + " us, p95 " +
+                sorted[sorted.length * 95 / 100] / 1000 + " us, max " +
+                sorted[sorted.length - 1] / 1000 + " us");
+    }
+}
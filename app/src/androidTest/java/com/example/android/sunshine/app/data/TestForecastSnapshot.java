@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastSnapshot.invalidate(mContext);
+        super.tearDown();
+    }
+
+    /*
+        What the sync writes must come back out of the mapped file unchanged.
+     */
+    public void testWriteAndRead() {
+        ContentValues[] days = TestProvider.createBulkInsertWeatherValues(1);
+        List<ContentValues> dayList = Arrays.asList(days);
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION, dayList);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: the snapshot just written couldn't be read back", snapshot);
+        assertEquals(days.length, snapshot.getDayCount());
+
+        for (int i = 0; i < days.length; i++) {
+            ContentValues day = days[i];
+            int index = snapshot.indexOfDay(day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+            assertEquals("Error: days should keep their order in the snapshot", i, index);
+            assertEquals(day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                    snapshot.getWeatherId(index));
+            assertEquals(day.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC),
+                    snapshot.getDescription(index));
+            assertEquals(day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    snapshot.getMaxTemp(index), 0);
+            assertEquals(day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    snapshot.getMinTemp(index), 0);
+            assertEquals(day.getAsFloat(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED),
+                    snapshot.getWindSpeed(index), 0);
+        }
+        assertEquals("Error: a day that wasn't written shouldn't be found",
+                -1, snapshot.indexOfDay(TestUtilities.TEST_DATE - TestUtilities.MILLIS_IN_A_DAY));
+    }
+
+    public void testOtherLocationAndInvalidate() {
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION,
+                Arrays.asList(TestProvider.createBulkInsertWeatherValues(1)));
+        assertNull("Error: the snapshot should only answer for its own location",
+                ForecastSnapshot.get(mContext, "elsewhere"));
+
+        ForecastSnapshot.invalidate(mContext);
+        assertNull("Error: an invalidated snapshot should send readers to the provider",
+                ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION));
+    }
+
+    public void testStaleSnapshot() {
+        long before = System.currentTimeMillis();
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION,
+                Arrays.asList(TestProvider.createBulkInsertWeatherValues(1)));
+        ForecastSnapshot snapshot = ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION);
+        assertTrue("Error: a snapshot written after the fetch should be current",
+                snapshot.isCurrentFor(before));
+        assertFalse("Error: a snapshot written before the last fetch should be stale",
+                snapshot.isCurrentFor(snapshot.getWrittenAt() + 1));
+    }
+
+    /*
+        A damaged file is ignored, never a crash in the widgets, Muzei or the wear push.  The
+        offsets are those of ForecastSnapshot's layout.
+     */
+    public void testDamagedSnapshot() throws Exception {
+        final int stringCount = 20;
+        final int firstDayDescription = 88 + 12;
+        final int firstString = 88 + 48 * TestProvider.createBulkInsertWeatherValues(1).length;
+
+        assertDamagedSnapshotIgnored(stringCount, -1);
+        assertDamagedSnapshotIgnored(stringCount, Integer.MAX_VALUE);
+        assertDamagedSnapshotIgnored(firstDayDescription, -1);
+        assertDamagedSnapshotIgnored(firstDayDescription, 1000);
+        // A string length of 0x8000 or more, which is negative as a short
+        assertDamagedSnapshotIgnored(firstString, 0xfffe0000);
+    }
+
+    private void assertDamagedSnapshotIgnored(int offset, int value) throws Exception {
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION,
+                Arrays.asList(TestProvider.createBulkInsertWeatherValues(1)));
+        File file = new File(mContext.getFilesDir(), "forecast.snapshot");
+        byte[] bytes = new byte[(int) file.length()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+
+        // Through invalidate, so the old mapping isn't reused for a file of the same length
+        ForecastSnapshot.invalidate(mContext);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        assertNull("Error: a damaged snapshot should be ignored (" + value + " at " + offset + ")",
+                ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the location search route against the LIKE scan it replaces, over a large number of
+    stored locations.  The timings go to the log; the test only fails if the two disagree.
+ */
+public class TestLocationSearchBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationSearchBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 20000;
+    private static final int RUNS = 20;
+    private static final int LIMIT = 20;
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ren", "sa", "to", "vel", "dor", "an", "ber", "que", "zu"
+    };
+
+    private static final String[] PREFIXES = {"k", "lo", "ren", "sato", "velzu", "12"};
+
+    //city_name LIKE ? OR location_setting LIKE ?
+    private static final String sLikeSelection =
+            LocationEntry.COLUMN_CITY_NAME + " LIKE ? OR " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + " LIKE ?";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, Integer.toString(10000 + i));
+                location.put(LocationEntry.COLUMN_CITY_NAME, cityName(i));
+                db.insert(LocationEntry.TABLE_NAME, null, location);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHelper.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    // A made up, single word city name, e.g. "Lorensa"
+    private static String cityName(int i) {
+        StringBuilder name = new StringBuilder();
+        for (int n = i * 7919 + 1; n > 0; n /= SYLLABLES.length) {
+            name.append(SYLLABLES[n % SYLLABLES.length]);
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
+    }
+
+    public void testSearchAgainstLikeScan() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        for (String prefix : PREFIXES) {
+            int liked = 0;
+            long likeStart = SystemClock.elapsedRealtime();
+            for (int run = 0; run < RUNS; run++) {
+                Cursor cursor = db.query(LocationEntry.TABLE_NAME, null, sLikeSelection,
+                        new String[]{prefix + "%", prefix + "%"}, null, null, null);
+                liked = cursor.getCount();
+                cursor.close();
+            }
+            long likeMillis = SystemClock.elapsedRealtime() - likeStart;
+
+            int found = 0;
+            long searchStart = SystemClock.elapsedRealtime();
+            for (int run = 0; run < RUNS; run++) {
+                Cursor cursor = mContext.getContentResolver().query(
+                        LocationEntry.buildLocationSearchUri(prefix, LIMIT), null, null, null, null);
+                found = cursor.getCount();
+                cursor.close();
+            }
+            long searchMillis = SystemClock.elapsedRealtime() - searchStart;
+
+            Log.i(LOG_TAG, "'" + prefix + "' over " + LOCATIONS + " locations, " + RUNS +
+                    " runs: LIKE scan " + likeMillis + " ms (" + liked + " rows), search route " +
+                    searchMillis + " ms (" + found + " rows)");
+            assertEquals("Error: the search route and the LIKE scan disagree for '" + prefix + "'",
+                    Math.min(liked, LIMIT), found);
+        }
+        db.close();
+    }
+}
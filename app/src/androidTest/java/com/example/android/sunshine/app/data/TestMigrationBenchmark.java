@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Times the upgrade from the oldest migratable schema to the current one on databases of
+    growing size, i.e. what the first launch after an update costs.  The timings go to the log.
+ */
+public class TestMigrationBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestMigrationBenchmark.class.getSimpleName();
+
+    // One location with this many days of history
+    private static final int[] HISTORY_SIZES = {365, 3650, 36500};
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testMigrationTime() {
+        for (int days : HISTORY_SIZES) {
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            TestMigrations.createVersion2Database(mContext, days);
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            long start = SystemClock.elapsedRealtime();
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            long millis = SystemClock.elapsedRealtime() - start;
+
+            Log.i(LOG_TAG, "Upgrade from version " + WeatherDbHelper.OLDEST_MIGRATABLE_VERSION +
+                    " to " + WeatherDbHelper.DATABASE_VERSION + " with " + days + " days: " +
+                    millis + " ms");
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            dbHelper.close();
+        }
+    }
+}
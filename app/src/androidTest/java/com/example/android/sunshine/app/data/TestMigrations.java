@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+
+/*
+    Builds databases with the schema of an old release, then lets WeatherDbHelper upgrade them.
+    The old schemas are spelled out literally on purpose: they must not follow the contract as
+    it changes.
+ */
+public class TestMigrations extends AndroidTestCase {
+
+    // The schema as shipped with database version 2
+    private static final String[] VERSION_2_SCHEMA = {
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY, " +
+                    "location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL, " +
+                    "coord_lat REAL NOT NULL, coord_long REAL NOT NULL );",
+            "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                    "short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL, " +
+                    "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                    "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                    "FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                    "UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+
+    private static final int HISTORY_DAYS = 30;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    /*
+        Creates the weather database as version 2 of the app left it, with a location and
+        {@code days} days of weather in it.  Returns the location's row id.
+     */
+    static long createVersion2Database(Context context, int days) {
+        SQLiteDatabase db = context.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0, null);
+        for (String statement : VERSION_2_SCHEMA) {
+            db.execSQL(statement);
+        }
+        db.setVersion(2);
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        TestUtilities.insertSyntheticHistory(db, locationRowId, TestUtilities.TEST_DATE, days,
+                false);
+        db.close();
+        return locationRowId;
+    }
+
+    public void testUpgradeFromVersion2KeepsRows() {
+        createVersion2Database(mContext, HISTORY_DAYS);
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertEquals("Error: the database wasn't upgraded to the current version",
+                WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null,
+                null, null, null);
+        assertEquals("Error: the upgrade lost weather rows", HISTORY_DAYS, cursor.getCount());
+        cursor.close();
+        cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME, null, null, null,
+                null, null, null);
+        assertEquals("Error: the upgrade lost location rows", 1, cursor.getCount());
+        cursor.close();
+
+        cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{WeatherContract.WeatherEntry.INDEX_LOCATION_DATE});
+        assertTrue("Error: the version 3 migration didn't create the (location, date) index",
+                cursor.moveToFirst());
+        cursor.close();
+
+        cursor = db.rawQuery("SELECT docid FROM " + WeatherContract.LocationEntry.FTS_TABLE_NAME +
+                " WHERE " + WeatherContract.LocationEntry.FTS_TABLE_NAME + " MATCH ?",
+                new String[]{"north*"});
+        assertEquals("Error: the version 5 migration didn't index the existing locations",
+                1, cursor.getCount());
+        cursor.close();
+
+        // One or the other, depending on whether this SQLite has the rtree module
+        cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE name IN (?, ?)",
+                new String[]{WeatherContract.LocationEntry.RTREE_TABLE_NAME,
+                        WeatherContract.LocationEntry.INDEX_COORD});
+        assertEquals("Error: the version 6 migration didn't index the coordinates",
+                1, cursor.getCount());
+        cursor.close();
+
+        cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME, null, null, null,
+                null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the version 7 migration should leave old locations unfetched",
+                0, cursor.getLong(cursor.getColumnIndex(
+                        WeatherContract.LocationEntry.COLUMN_FETCHED_AT)));
+        cursor.close();
+        cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_SOURCE_VERSION},
+                null, null, null, null, null);
+        assertEquals("Error: the version 7 migration didn't add the freshness columns",
+                HISTORY_DAYS, cursor.getCount());
+        cursor.close();
+
+        // Stamping a location's freshness mustn't rewrite its entry in the search index
+        cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = ?",
+                new String[]{WeatherContract.LocationEntry.FTS_TABLE_NAME + "_update"});
+        assertTrue(cursor.moveToFirst());
+        assertTrue("Error: the version 7 migration didn't narrow the search index trigger",
+                cursor.getString(0).contains("UPDATE OF"));
+        cursor.close();
+        db.close();
+    }
+
+    /*
+        Version 4 stores measurements in tenths and descriptions in a dictionary; read through
+        the provider's projection, the migrated rows must come back as they were written.
+     */
+    public void testUpgradeToVersion4EncodesValues() {
+        createVersion2Database(mContext, HISTORY_DAYS);
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(WeatherContract.WeatherEntry.TABLE_NAME);
+        builder.setProjectionMap(WeatherStorage.buildWeatherProjectionMap());
+        Cursor cursor = builder.query(db, WeatherStorage.ALL_WEATHER_COLUMNS, null, null, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC", "2");
+
+        // The second day of TestUtilities.insertSyntheticHistory
+        assertTrue(cursor.moveToPosition(1));
+        ContentValues expected = new ContentValues();
+        expected.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 37);
+        expected.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 27);
+        expected.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 991);
+        expected.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 23);
+        expected.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 6);
+        expected.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clouds");
+        expected.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 1.5);
+        expected.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 801);
+        TestUtilities.validateCurrentRecord("Error: the version 4 migration changed values",
+                cursor, expected);
+        cursor.close();
+
+        cursor = db.query(WeatherStorage.CONDITION_TABLE_NAME, null, null, null, null, null, null);
+        assertEquals("Error: every distinct description should be stored once",
+                1, cursor.getCount());
+        cursor.close();
+        db.close();
+    }
+
+    public void testUpgradeFromUnknownVersionStartsOver() {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0, null);
+        db.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY, date TEXT);");
+        db.execSQL("INSERT INTO weather (date) VALUES ('20141220');");
+        db.setVersion(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION - 1);
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null,
+                null, null, null);
+        assertEquals("Error: a schema too old to migrate should be discarded",
+                0, cursor.getCount());
+        assertTrue("Error: the weather table wasn't recreated with the current schema",
+                cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_LOC_KEY) != -1);
+        cursor.close();
+        db.close();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/*
+    Compares the nearest-location route against measuring the distance to every stored location,
+    over a large synthetic set of locations spread over the globe.  The timings go to the log;
+    the test only fails if the two disagree.
+ */
+public class TestNearestLocationBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNearestLocationBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 20000;
+    private static final int RUNS = 20;
+    private static final int LIMIT = 10;
+
+    // Where the fixes are taken: somewhere crowded, the middle of an ocean, next to the date
+    // line and next to a pole
+    private static final double[][] POINTS = {
+            {48.85, 2.35}, {-30.0, -140.0}, {10.0, 179.9}, {89.5, 0.0}
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Random random = new Random(42);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "near-" + i);
+                // Uniform over the sphere
+                location.put(LocationEntry.COLUMN_COORD_LAT,
+                        Math.toDegrees(Math.asin(2 * random.nextDouble() - 1)));
+                location.put(LocationEntry.COLUMN_COORD_LONG, 360 * random.nextDouble() - 180);
+                db.insert(LocationEntry.TABLE_NAME, null, location);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHelper.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testNearAgainstFullScan() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        for (double[] point : POINTS) {
+            String[] scanned = null;
+            long scanStart = SystemClock.elapsedRealtime();
+            for (int run = 0; run < RUNS; run++) {
+                scanned = nearestByFullScan(db, point[0], point[1]);
+            }
+            long scanMillis = SystemClock.elapsedRealtime() - scanStart;
+
+            String[] found = null;
+            long nearStart = SystemClock.elapsedRealtime();
+            for (int run = 0; run < RUNS; run++) {
+                found = nearestByRoute(point[0], point[1]);
+            }
+            long nearMillis = SystemClock.elapsedRealtime() - nearStart;
+
+            Log.i(LOG_TAG, LIMIT + " nearest of " + LOCATIONS + " locations to " + point[0] +
+                    ", " + point[1] + ", " + RUNS + " runs: full scan " + scanMillis +
+                    " ms, near route " + nearMillis + " ms");
+            assertTrue("Error: the near route and the full scan disagree at " + point[0] + ", " +
+                    point[1], Arrays.equals(scanned, found));
+        }
+        db.close();
+    }
+
+    private String[] nearestByRoute(double latitude, double longitude) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNearUri(latitude, longitude, LIMIT),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        String[] settings = new String[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            settings[i] = cursor.getString(0);
+        }
+        cursor.close();
+        return settings;
+    }
+
+    private static String[] nearestByFullScan(SQLiteDatabase db, double latitude,
+                                              double longitude) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING,
+                        LocationEntry.COLUMN_COORD_LAT, LocationEntry.COLUMN_COORD_LONG},
+                null, null, null, null, null);
+        String[] settings = new String[cursor.getCount()];
+        final double[] distances = new double[cursor.getCount()];
+        Integer[] order = new Integer[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            settings[i] = cursor.getString(0);
+            distances[i] = NearestLocations.distanceKm(latitude, longitude,
+                    cursor.getDouble(1), cursor.getDouble(2));
+            order[i] = i;
+        }
+        cursor.close();
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(distances[lhs], distances[rhs]);
+            }
+        });
+        String[] nearest = new String[Math.min(LIMIT, order.length)];
+        for (int i = 0; i < nearest.length; i++) {
+            nearest[i] = settings[order[i]];
+        }
+        return nearest;
+    }
+}
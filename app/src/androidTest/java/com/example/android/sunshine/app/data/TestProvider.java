@@ -16,6 +16,8 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -24,9 +26,19 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -155,6 +167,13 @@ public class TestProvider extends AndroidTestCase {
         assertEquals("Error: the WeatherEntry CONTENT_URI with location and date should return WeatherEntry.CONTENT_ITEM_TYPE",
                 WeatherEntry.CONTENT_ITEM_TYPE, type);
 
+        // content://com.example.android.sunshine.app/weather/94074/stats?date=...&end=...
+        type = mContext.getContentResolver().getType(
+                WeatherEntry.buildWeatherLocationStats(testLocation, testDate, testDate));
+        // vnd.android.cursor.item/com.example.android.sunshine.app/weather/stats
+        assertEquals("Error: the WeatherEntry stats URI should return StatsEntry.CONTENT_ITEM_TYPE",
+                WeatherContract.StatsEntry.CONTENT_ITEM_TYPE, type);
+
         // content://com.example.android.sunshine.app/location/
         type = mContext.getContentResolver().getType(LocationEntry.CONTENT_URI);
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
@@ -179,7 +198,8 @@ public class TestProvider extends AndroidTestCase {
         // Fantastic.  Now that we have a location, add some weather!
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
-        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null,
+                WeatherStorage.encode(db, weatherValues, null));
         assertTrue("Unable to Insert WeatherEntry into the Database", weatherRowId != -1);
 
         db.close();
@@ -197,6 +217,55 @@ public class TestProvider extends AndroidTestCase {
         TestUtilities.validateCursor("testBasicWeatherQuery", weatherCursor, weatherValues);
     }
 
+    /*
+        Selections run against the stored layout, so the provider refuses ones that mention a
+        column stored encoded rather than quietly comparing against tenths or a missing column.
+     */
+    public void testSelectionOnEncodedColumns() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        String[] refused = {
+                WeatherEntry.COLUMN_MAX_TEMP + " > ?",
+                WeatherEntry.COLUMN_SHORT_DESC + " = ?",
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_HUMIDITY + " > ?",
+                "\"" + WeatherEntry.COLUMN_WIND_SPEED + "\" > ?",
+        };
+        for (String selection : refused) {
+            try {
+                mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                        null, selection, new String[] {"30"}, null);
+                fail("Error: a query selecting on an encoded column ran: " + selection);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+            try {
+                mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                        selection, new String[] {"30"});
+                fail("Error: a delete selecting on an encoded column ran: " + selection);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        try {
+            mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, weatherValues,
+                    WeatherEntry.COLUMN_MIN_TEMP + " < ?", new String[] {"0"});
+            fail("Error: an update selecting on an encoded column ran");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Literals and function calls that merely share a column's name are fine
+        String date = Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_DATE + " = ? AND 'max' = 'max' AND max(1, 2) = 2",
+                new String[] {date}, null);
+        assertEquals("Error: a selection on the plain columns didn't match", 1,
+                cursor.getCount());
+        cursor.close();
+    }
+
     /*
         This test uses the database directly to insert and then uses the ContentProvider to
         read out the data.  Uncomment this test to see if your location queries are
@@ -433,12 +502,13 @@ public class TestProvider extends AndroidTestCase {
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, currentTestDate);
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2 + 0.01 * (float) i);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3 - 0.01 * (float) i);
+            // The provider keeps one decimal, so stick to values it can give back unchanged
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, (12 + i) / 10.0);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, (13 + i) / 10.0);
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5 + 0.2 * (float) i);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, (55 + 2 * i) / 10.0);
             weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 321);
             returnContentValues[i] = weatherValues;
         }
@@ -512,4 +582,539 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    static WeatherProvider getLocalWeatherProvider(android.content.Context context) {
+        ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+        client.release();
+        return provider;
+    }
+
+    /*
+        This test makes sure that the "today" lookups are answered from the provider's in-memory
+        forecast cache, and that a write through the provider is immediately visible.
+     */
+    public void testForecastCache() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, today);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        WeatherProvider provider = getLocalWeatherProvider(mContext);
+        String[] projection = new String[]{
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_MIN_TEMP
+        };
+        Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, today);
+
+        long misses = provider.getForecastCacheMisses();
+        long hits = provider.getForecastCacheHits();
+
+        Cursor cursor = mContext.getContentResolver().query(todayUri, projection, null, null, null);
+        assertTrue("Error: today's row not returned on a cache miss", cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(2));
+        cursor.close();
+        assertEquals("Error: first lookup should miss the forecast cache",
+                misses + 1, provider.getForecastCacheMisses());
+
+        cursor = mContext.getContentResolver().query(todayUri, projection, null, null, null);
+        assertTrue("Error: today's row not returned on a cache hit", cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(2));
+        assertEquals(65.0, cursor.getDouble(3));
+        assertEquals(321, cursor.getInt(1));
+        cursor.close();
+        assertEquals("Error: second lookup should hit the forecast cache",
+                hits + 1, provider.getForecastCacheHits());
+
+        // A write must invalidate the cache
+        ContentValues updatedValues = new ContentValues();
+        updatedValues.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updatedValues,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(today)});
+
+        cursor = mContext.getContentResolver().query(todayUri, projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: forecast cache served a stale row after an update",
+                80.0, cursor.getDouble(2));
+        cursor.close();
+
+        // The start date route is served from the same window
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, today),
+                projection, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        A sync writes a batch of days and prunes old data.  The observers of the synced location
+        should be woken up exactly once for it, and observers of other locations not at all.
+     */
+    public void testSyncNotificationsAreScopedAndCoalesced() throws Exception {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] days = createBulkInsertWeatherValues(locationRowId);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (ContentValues day : days) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(day).build());
+        }
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+
+        TestUtilities.TestContentObserver listObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, listObserver);
+        TestUtilities.TestContentObserver otherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation("elsewhere"), true, otherObserver);
+
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        int listWakeUps = listObserver.waitForNotificationsAndCount(500);
+        int otherWakeUps = otherObserver.countNotifications(0);
+        mContext.getContentResolver().unregisterContentObserver(listObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherObserver);
+
+        assertEquals("Error: a sync should wake the location's observers exactly once",
+                1, listWakeUps);
+        assertEquals("Error: a sync should not wake observers of other locations",
+                0, otherWakeUps);
+
+        // Changing a single day only wakes observers of that day (and of its location)
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), true, dayObserver);
+        TestUtilities.TestContentObserver otherDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE + 1000 * 60 * 60 * 24), true, otherDayObserver);
+
+        ContentValues updatedValues = new ContentValues();
+        updatedValues.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updatedValues,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))});
+
+        assertEquals(1, dayObserver.waitForNotificationsAndCount(500));
+        assertEquals(0, otherDayObserver.countNotifications(0));
+        mContext.getContentResolver().unregisterContentObserver(dayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherDayObserver);
+    }
+
+    /*
+        Reads the bulk inserted days back a page at a time, following the "after" key from the
+        last row of each page, and checks every day comes back exactly once and in order.
+     */
+    public void testWeatherPages() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] days = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        final int pageSize = 4;
+        String[] projection = new String[]{WeatherEntry.COLUMN_DATE};
+        Uri pageUri = WeatherEntry.buildWeatherLocationFirstPage(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE, pageSize);
+        int pages = 0;
+        int rows = 0;
+        long lastDate = 0;
+        while (true) {
+            Cursor cursor = mContext.getContentResolver().query(pageUri, projection, null, null, null);
+            int count = cursor.getCount();
+            assertTrue("Error: a page must not be larger than its limit", count <= pageSize);
+            while (cursor.moveToNext()) {
+                long date = cursor.getLong(0);
+                assertEquals("Error: pages should list every day in order",
+                        WeatherContract.normalizeDate(days[rows].getAsLong(WeatherEntry.COLUMN_DATE)),
+                        date);
+                assertTrue(date > lastDate);
+                lastDate = date;
+                rows++;
+            }
+            cursor.close();
+            pages++;
+            if (count < pageSize) break;
+            pageUri = WeatherEntry.buildWeatherLocationNextPage(TestUtilities.TEST_LOCATION,
+                    lastDate, pageSize);
+        }
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, rows);
+        assertEquals(3, pages);
+    }
+
+    /*
+        A date range Uri returns exactly the days inside the range, both ends included.
+     */
+    public void testWeatherDateRange() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] days = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        long startDate = days[2].getAsLong(WeatherEntry.COLUMN_DATE);
+        long endDate = days[5].getAsLong(WeatherEntry.COLUMN_DATE);
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDateRange(TestUtilities.TEST_LOCATION,
+                        startDate, endDate),
+                new String[]{WeatherEntry.COLUMN_DATE},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: a date range should include both of its ends", 4, cursor.getCount());
+        for (int i = 2; cursor.moveToNext(); i++) {
+            assertEquals(WeatherContract.normalizeDate(days[i].getAsLong(WeatherEntry.COLUMN_DATE)),
+                    cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
+    /*
+        Every call on a route shows up in "metrics/provider", and deleting that Uri starts the
+        counters over.
+     */
+    public void testProviderMetrics() {
+        mContext.getContentResolver().delete(WeatherContract.MetricsEntry.CONTENT_URI, null, null);
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        for (int i = 0; i < 3; i++) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                    null, null, null, null);
+            cursor.close();
+        }
+
+        Cursor metrics = mContext.getContentResolver().query(
+                WeatherContract.MetricsEntry.CONTENT_URI, null, null, null, null);
+        int routeColumn = metrics.getColumnIndex(WeatherContract.MetricsEntry.COLUMN_ROUTE);
+        int operationColumn = metrics.getColumnIndex(WeatherContract.MetricsEntry.COLUMN_OPERATION);
+        int countColumn = metrics.getColumnIndex(WeatherContract.MetricsEntry.COLUMN_COUNT);
+        int rowsColumn = metrics.getColumnIndex(WeatherContract.MetricsEntry.COLUMN_ROWS);
+        int firstBucketColumn = metrics.getColumnIndex(
+                WeatherContract.MetricsEntry.getLatencyBucketColumn(0));
+        boolean sawQuery = false;
+        boolean sawBulkInsert = false;
+        while (metrics.moveToNext()) {
+            String route = metrics.getString(routeColumn);
+            String operation = metrics.getString(operationColumn);
+            if ("weather/*".equals(route) && "query".equals(operation)) {
+                sawQuery = true;
+                assertEquals("Error: wrong number of queries recorded", 3, metrics.getLong(countColumn));
+                assertEquals("Error: wrong number of rows recorded",
+                        3 * BULK_INSERT_RECORDS_TO_INSERT, metrics.getLong(rowsColumn));
+                long histogramTotal = 0;
+                for (int i = 0; i <= WeatherContract.MetricsEntry.LATENCY_BUCKET_BOUNDS_MICROS.length; i++) {
+                    histogramTotal += metrics.getLong(firstBucketColumn + i);
+                }
+                assertEquals("Error: every query should land in one latency bucket",
+                        3, histogramTotal);
+            } else if ("weather".equals(route) && "bulkInsert".equals(operation)) {
+                sawBulkInsert = true;
+                assertEquals(BULK_INSERT_RECORDS_TO_INSERT, metrics.getLong(rowsColumn));
+            }
+        }
+        metrics.close();
+        assertTrue("Error: the location query wasn't recorded", sawQuery);
+        assertTrue("Error: the bulk insert wasn't recorded", sawBulkInsert);
+
+        mContext.getContentResolver().delete(WeatherContract.MetricsEntry.CONTENT_URI, null, null);
+        metrics = mContext.getContentResolver().query(
+                WeatherContract.MetricsEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: deleting the metrics Uri should reset the counters",
+                0, metrics.getCount());
+        metrics.close();
+    }
+
+    /*
+        Frame metrics are collected only once they're turned on through "metrics/frames", and a
+        slow frame is charged to what was bound in it.
+     */
+    public void testFrameMetrics() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) return;
+        ContentValues enable = new ContentValues();
+        enable.put(WeatherContract.FrameMetricsEntry.COLUMN_ENABLED, true);
+        mContext.getContentResolver().update(
+                WeatherContract.FrameMetricsEntry.CONTENT_URI, enable, null, null);
+        mContext.getContentResolver().delete(
+                WeatherContract.FrameMetricsEntry.CONTENT_URI, null, null);
+        try {
+            final FrameMetrics.Screen screen = FrameMetrics.forScreen("test_screen");
+            final Handler handler = new Handler(Looper.getMainLooper());
+            final CountDownLatch done = new CountDownLatch(1);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    screen.start(mContext);
+                    // A bind, and a few frames' worth of work, once frames are being timed
+                    handler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            screen.onBind(3, "test_path");
+                            SystemClock.sleep(100);
+                        }
+                    }, 100);
+                    handler.postDelayed(new Runnable() {
+                        @Override
+                        public void run() {
+                            screen.stop();
+                            done.countDown();
+                        }
+                    }, 400);
+                }
+            });
+            assertTrue("Error: the main thread didn't get to the frames",
+                    done.await(5, TimeUnit.SECONDS));
+
+            Cursor metrics = mContext.getContentResolver().query(
+                    WeatherContract.FrameMetricsEntry.CONTENT_URI, null, null, null, null);
+            boolean sawScreen = false;
+            while (metrics.moveToNext()) {
+                if (!"test_screen".equals(metrics.getString(metrics.getColumnIndex(
+                        WeatherContract.FrameMetricsEntry.COLUMN_SCREEN)))) continue;
+                sawScreen = true;
+                long frames = metrics.getLong(metrics.getColumnIndex(
+                        WeatherContract.FrameMetricsEntry.COLUMN_FRAMES));
+                long histogramTotal = 0;
+                int firstBucketColumn = metrics.getColumnIndex(
+                        WeatherContract.FrameMetricsEntry.getFrameBucketColumn(0));
+                for (int i = 0; i <= WeatherContract.FrameMetricsEntry.FRAME_BUCKET_BOUNDS_MILLIS.length; i++) {
+                    histogramTotal += metrics.getLong(firstBucketColumn + i);
+                }
+                assertEquals("Error: every frame should land in one duration bucket",
+                        frames, histogramTotal);
+                assertTrue("Error: the slow frame wasn't counted", metrics.getLong(
+                        metrics.getColumnIndex(WeatherContract.FrameMetricsEntry.COLUMN_SLOW_FRAMES)) >= 1);
+                assertTrue("Error: the slow frame's bind wasn't recorded", metrics.getString(
+                        metrics.getColumnIndex(WeatherContract.FrameMetricsEntry.COLUMN_SLOW_BIND_POSITIONS))
+                        .contains("3:1"));
+                assertTrue("Error: the slow frame's bind path wasn't recorded", metrics.getString(
+                        metrics.getColumnIndex(WeatherContract.FrameMetricsEntry.COLUMN_SLOW_BIND_PATHS))
+                        .contains("test_path:1"));
+            }
+            metrics.close();
+            assertTrue("Error: the screen's frames weren't recorded", sawScreen);
+        } finally {
+            ContentValues disable = new ContentValues();
+            disable.put(WeatherContract.FrameMetricsEntry.COLUMN_ENABLED, false);
+            mContext.getContentResolver().update(
+                    WeatherContract.FrameMetricsEntry.CONTENT_URI, disable, null, null);
+            mContext.getContentResolver().delete(
+                    WeatherContract.FrameMetricsEntry.CONTENT_URI, null, null);
+        }
+    }
+
+    /*
+        The search index follows inserts, updates and deletes on the location table, and every
+        typed word has to start a word of the setting or the city name.
+     */
+    public void testLocationSearch() {
+        ContentValues northPole = TestUtilities.createNorthPoleLocationValues();
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, northPole);
+        ContentValues mountainView = new ContentValues(northPole);
+        mountainView.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        mountainView.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, mountainView);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("mou VI"), null, null, null, null);
+        TestUtilities.validateCursor("Error: prefix search on the city name failed",
+                cursor, mountainView);
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("9970"), null, null, null, null);
+        TestUtilities.validateCursor("Error: prefix search on the location setting failed",
+                cursor, northPole);
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("\"nor\" -pol*"), null, null, null, null);
+        assertEquals("Error: FTS operators typed by the user should be ignored",
+                1, cursor.getCount());
+        cursor.close();
+
+        ContentValues renamed = new ContentValues();
+        renamed.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, renamed,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION});
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("north"), null, null, null, null);
+        assertEquals("Error: the index wasn't updated with the location", 0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("vill"), null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("mountain"), null, null, null, null);
+        assertEquals("Error: deleted locations are still found", 0, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("*"), null, null, null, null);
+        assertEquals("Error: a search without words should find nothing", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Nearest locations come back nearest first, with their distance, and follow the
+        location table as it changes.
+     */
+    public void testLocationsNear() {
+        ContentValues northPole = TestUtilities.createNorthPoleLocationValues();
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, northPole);
+        ContentValues mountainView = new ContentValues(northPole);
+        mountainView.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        mountainView.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        mountainView.put(LocationEntry.COLUMN_COORD_LAT, 37.386);
+        mountainView.put(LocationEntry.COLUMN_COORD_LONG, -122.084);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, mountainView);
+
+        // Palo Alto
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNearUri(37.442, -122.143),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING, LocationEntry.COLUMN_DISTANCE},
+                null, null, null);
+        assertEquals("Error: every location should be found, however far", 2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("94043", cursor.getString(0));
+        assertEquals("Error: wrong distance to Mountain View", 8.1, cursor.getDouble(1), 0.5);
+        assertTrue(cursor.moveToNext());
+        assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(0));
+        cursor.close();
+
+        ContentValues moved = new ContentValues();
+        moved.put(LocationEntry.COLUMN_COORD_LAT, 37.44);
+        moved.put(LocationEntry.COLUMN_COORD_LONG, -122.14);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, moved,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION});
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNearUri(37.442, -122.143, 1),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the spatial index didn't follow the update",
+                TestUtilities.TEST_LOCATION, cursor.getString(0));
+        cursor.close();
+    }
+
+    /*
+        Writing weather stamps its location with the newest fetch, which the freshness call
+        and the query fallback both report.
+     */
+    public void testLocationFreshness() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        Freshness freshness = Freshness.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals("Error: a location without weather should never have been fetched",
+                0, freshness.fetchedAt);
+        assertFalse(freshness.isFresh(Long.MAX_VALUE));
+
+        long fetchedAt = System.currentTimeMillis() - 1000;
+        ContentValues[] days = createBulkInsertWeatherValues(locationRowId);
+        for (ContentValues day : days) {
+            day.put(WeatherEntry.COLUMN_FETCHED_AT, fetchedAt);
+            day.put(WeatherEntry.COLUMN_SOURCE_VERSION, WeatherContract.SOURCE_VERSION);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        freshness = Freshness.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals("Error: the location wasn't stamped with its weather's fetch",
+                fetchedAt, freshness.fetchedAt);
+        assertEquals(WeatherContract.SOURCE_VERSION, freshness.sourceVersion);
+        assertTrue(freshness.isFresh(60 * 1000));
+        assertFalse(freshness.isFresh(500));
+        assertEquals("Error: the query fallback disagrees with the call", fetchedAt,
+                Freshness.fromQuery(mContext, TestUtilities.TEST_LOCATION).fetchedAt);
+
+        // An older fetch doesn't make the location look older; the rows keep their own stamp
+        ContentValues late = TestUtilities.createWeatherValues(locationRowId);
+        late.put(WeatherEntry.COLUMN_FETCHED_AT, fetchedAt - 1000);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, late);
+        assertEquals(fetchedAt, Freshness.get(mContext, TestUtilities.TEST_LOCATION).fetchedAt);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        late.getAsLong(WeatherEntry.COLUMN_DATE)),
+                new String[]{WeatherEntry.COLUMN_FETCHED_AT, WeatherEntry.COLUMN_SOURCE_VERSION},
+                null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(fetchedAt - 1000, cursor.getLong(0));
+        assertEquals("Error: a row without a source version should have 0", 0, cursor.getInt(1));
+        cursor.close();
+
+        assertEquals("Error: an unknown location should never have been fetched",
+                0, Freshness.get(mContext, "nowhere").fetchedAt);
+    }
+
+    /*
+        An export imported again gives back the same rows; a damaged archive is refused and
+        leaves the database as it was.
+     */
+    public void testArchiveRoundTrip() throws Exception {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] days = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        File archive = new File(mContext.getCacheDir(), "weather.archive");
+        Bundle exported = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_EXPORT_ARCHIVE, archive.getAbsolutePath(), null);
+        assertEquals(1, exported.getLong(WeatherContract.EXTRA_LOCATION_COUNT));
+        assertEquals(days.length, exported.getLong(WeatherContract.EXTRA_WEATHER_COUNT));
+
+        deleteAllRecordsFromProvider();
+        Bundle imported = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_IMPORT_ARCHIVE, archive.getAbsolutePath(), null);
+        assertEquals(days.length, imported.getLong(WeatherContract.EXTRA_WEATHER_COUNT));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: the import didn't bring every day back", days.length,
+                cursor.getCount());
+        for (ContentValues day : days) {
+            assertTrue(cursor.moveToNext());
+            TestUtilities.validateCurrentRecord("Error: the import changed a day", cursor, day);
+        }
+        cursor.close();
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearchUri("north"), null, null, null, null);
+        assertEquals("Error: imported locations should be searchable", 1, cursor.getCount());
+        cursor.close();
+
+        // Flip a byte in the middle of the weather records
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        file.seek(file.length() / 2);
+        int b = file.read();
+        file.seek(file.length() / 2);
+        file.write(b ^ 0x10);
+        file.close();
+        deleteAllRecordsFromProvider();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+        try {
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_IMPORT_ARCHIVE, archive.getAbsolutePath(), null);
+            fail("Error: a damaged archive was imported");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: a failed import changed the database", days.length,
+                cursor.getCount());
+        cursor.close();
+        archive.delete();
+    }
 }
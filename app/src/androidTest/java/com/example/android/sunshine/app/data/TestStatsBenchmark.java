@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the "weather/{location}/stats" route against the way callers used to compute the
+    same numbers: pull every day into a Cursor and loop over it in Java.  The timings go to the
+    log; the test only fails if the two approaches disagree.
+ */
+public class TestStatsBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestStatsBenchmark.class.getSimpleName();
+
+    // Ten years of daily history at the benchmarked location, plus some noise elsewhere
+    private static final int HISTORY_DAYS = 3650;
+    private static final int OTHER_LOCATIONS = 4;
+    private static final int RUNS = 20;
+
+    private static final String[] ITERATION_PROJECTION = {
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_WIND_SPEED
+    };
+
+    private static final String[] STATS_PROJECTION = {
+            StatsEntry.COLUMN_DAY_COUNT,
+            StatsEntry.COLUMN_MIN_TEMP,
+            StatsEntry.COLUMN_MAX_TEMP,
+            StatsEntry.COLUMN_AVG_HUMIDITY,
+            StatsEntry.COLUMN_MAX_WIND_SPEED
+    };
+
+    private long mFirstDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        mFirstDate = TestUtilities.TEST_DATE;
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        TestUtilities.insertSyntheticHistory(db, locationRowId, mFirstDate, HISTORY_DAYS);
+        for (int i = 0; i < OTHER_LOCATIONS; i++) {
+            ContentValues location = TestUtilities.createNorthPoleLocationValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "benchmark-" + i);
+            long otherRowId = db.insert(LocationEntry.TABLE_NAME, null, location);
+            TestUtilities.insertSyntheticHistory(db, otherRowId, mFirstDate, HISTORY_DAYS);
+        }
+        dbHelper.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testStatsAgainstCursorIteration() {
+        // The last year of the history
+        long endDate = mFirstDate + (HISTORY_DAYS - 1) * TestUtilities.MILLIS_IN_A_DAY;
+        long startDate = endDate - 364 * TestUtilities.MILLIS_IN_A_DAY;
+
+        double[] iterated = null;
+        long iterationStart = SystemClock.elapsedRealtime();
+        for (int run = 0; run < RUNS; run++) {
+            iterated = statsByIteration(startDate);
+        }
+        long iterationMillis = SystemClock.elapsedRealtime() - iterationStart;
+
+        double[] aggregated = null;
+        long aggregateStart = SystemClock.elapsedRealtime();
+        for (int run = 0; run < RUNS; run++) {
+            aggregated = statsByAggregation(startDate, endDate);
+        }
+        long aggregateMillis = SystemClock.elapsedRealtime() - aggregateStart;
+
+        Log.i(LOG_TAG, "Statistics over 365 of " + HISTORY_DAYS + " days, " + RUNS + " runs: " +
+                "cursor iteration " + iterationMillis + " ms, stats route " + aggregateMillis +
+                " ms");
+
+        assertEquals("Error: wrong number of days in the statistics", 365.0, aggregated[0]);
+        for (int i = 0; i < iterated.length; i++) {
+            assertEquals("Error: the stats route disagrees with cursor iteration",
+                    iterated[i], aggregated[i], 0.0001);
+        }
+    }
+
+    // day count, lowest min, highest max, average humidity, highest wind speed.  The period
+    // ends with the history, so "from the start date on" is exactly the period.
+    private double[] statsByIteration(long startDate) {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                startDate);
+        Cursor cursor = mContext.getContentResolver().query(uri, ITERATION_PROJECTION,
+                null, null, null);
+        double days = 0;
+        double minTemp = Double.MAX_VALUE;
+        double maxTemp = -Double.MAX_VALUE;
+        double humidity = 0;
+        double maxWind = -Double.MAX_VALUE;
+        while (cursor.moveToNext()) {
+            days++;
+            minTemp = Math.min(minTemp, cursor.getDouble(0));
+            maxTemp = Math.max(maxTemp, cursor.getDouble(1));
+            humidity += cursor.getDouble(2);
+            maxWind = Math.max(maxWind, cursor.getDouble(3));
+        }
+        cursor.close();
+        return new double[]{days, minTemp, maxTemp, humidity / days, maxWind};
+    }
+
+    private double[] statsByAggregation(long startDate, long endDate) {
+        Uri uri = WeatherEntry.buildWeatherLocationStats(TestUtilities.TEST_LOCATION,
+                startDate, endDate);
+        Cursor cursor = mContext.getContentResolver().query(uri, STATS_PROJECTION,
+                null, null, null);
+        assertTrue("Error: the stats route should always return one row", cursor.moveToFirst());
+        double[] stats = new double[STATS_PROJECTION.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = cursor.getDouble(i);
+        }
+        cursor.close();
+        return stats;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Compares the weather table before and after the version 4 layout (integers in tenths, and a
+    dictionary for descriptions) on the same history: pages on disk, the time to read every
+    row, and how many rows fit in the first cursor window.  The figures go to the log; the test
+    only checks that no row was lost on the way.
+ */
+public class TestStorageLayoutBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestStorageLayoutBenchmark.class.getSimpleName();
+
+    // One location with this many days of history
+    private static final int[] HISTORY_SIZES = {3650, 36500};
+
+    private static final int RUNS = 5;
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testLayouts() {
+        for (int days : HISTORY_SIZES) {
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            TestMigrations.createVersion2Database(mContext, days);
+
+            // The old layout, read as it is stored
+            SQLiteDatabase db = mContext.openOrCreateDatabase(
+                    WeatherDbHelper.DATABASE_NAME, 0, null);
+            db.execSQL("VACUUM");
+            SQLiteQueryBuilder plain = new SQLiteQueryBuilder();
+            plain.setTables(WeatherContract.WeatherEntry.TABLE_NAME);
+            // Every column it has; the version 2 table predates the freshness columns
+            log("REAL columns, inline descriptions", days, db, plain, null);
+            int rowsBefore = countRows(db);
+            db.close();
+
+            // The same rows after the upgrade, read through the provider's projection
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            db = dbHelper.getWritableDatabase();
+            db.execSQL("VACUUM");
+            SQLiteQueryBuilder decoding = new SQLiteQueryBuilder();
+            decoding.setTables(WeatherContract.WeatherEntry.TABLE_NAME);
+            decoding.setProjectionMap(WeatherStorage.buildWeatherProjectionMap());
+            log("tenths and dictionary", days, db, decoding, WeatherStorage.ALL_WEATHER_COLUMNS);
+            assertEquals("Error: the new layout lost rows", rowsBefore, countRows(db));
+            dbHelper.close();
+        }
+    }
+
+    private static void log(String layout, int days, SQLiteDatabase db,
+                            SQLiteQueryBuilder builder, String[] projection) {
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+
+        int windowRows = 0;
+        long start = SystemClock.elapsedRealtime();
+        for (int run = 0; run < RUNS; run++) {
+            Cursor cursor = builder.query(db, projection, null, null, null, null, null);
+            // Reading the count fills the first window
+            cursor.getCount();
+            windowRows = ((AbstractWindowedCursor) cursor).getWindow().getNumRows();
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    cursor.getString(i);
+                }
+            }
+            cursor.close();
+        }
+        long millis = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, layout + ", " + days + " days: " + pages + " pages of " + pageSize +
+                " bytes, full scan " + (millis / RUNS) + " ms, " + windowRows +
+                " rows in the first cursor window");
+    }
+
+    private static int countRows(SQLiteDatabase db) {
+        return (int) DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME, null);
+    }
+}
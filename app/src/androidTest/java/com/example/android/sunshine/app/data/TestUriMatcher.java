@@ -34,8 +34,19 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_RANGE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDateRange(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_STATS = WeatherContract.WeatherEntry.buildWeatherLocationStats(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_PAGE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationNextPage(LOCATION_QUERY, TEST_DATE, 7);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/location/search/lond"
+    private static final Uri TEST_LOCATION_SEARCH_DIR = WeatherContract.LocationEntry.buildLocationSearchUri("lond");
+    // content://com.example.android.sunshine.app/location/near/51.5/-0.12"
+    private static final Uri TEST_LOCATION_NEAR_DIR = WeatherContract.LocationEntry.buildLocationNearUri(51.5, -0.12);
+    // content://com.example.android.sunshine.app/metrics/provider"
+    private static final Uri TEST_METRICS_DIR = WeatherContract.MetricsEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/metrics/frames"
+    private static final Uri TEST_METRICS_FRAMES_DIR = WeatherContract.FrameMetricsEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -51,7 +62,21 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
         assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER WITH LOCATION AND DATE RANGE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_RANGE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE_RANGE);
+        assertEquals("Error: The WEATHER WITH LOCATION PAGE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_PAGE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_PAGE);
+        assertEquals("Error: The WEATHER WITH LOCATION STATS URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_STATS), WeatherProvider.WEATHER_WITH_LOCATION_STATS);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION SEARCH URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_SEARCH_DIR), WeatherProvider.LOCATION_SEARCH);
+        assertEquals("Error: The LOCATION NEAR URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAR_DIR), WeatherProvider.LOCATION_NEAR);
+        assertEquals("Error: The METRICS URI was matched incorrectly.",
+                testMatcher.match(TEST_METRICS_DIR), WeatherProvider.METRICS);
+        assertEquals("Error: The METRICS FRAMES URI was matched incorrectly.",
+                testMatcher.match(TEST_METRICS_FRAMES_DIR), WeatherProvider.METRICS_FRAMES);
     }
 }
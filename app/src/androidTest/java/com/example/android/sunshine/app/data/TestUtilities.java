@@ -27,6 +27,7 @@ import android.test.AndroidTestCase;
 
 import com.example.android.sunshine.app.utils.PollingCheck;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -111,6 +112,49 @@ public class TestUtilities extends AndroidTestCase {
         return locationRowId;
     }
 
+    static final long MILLIS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    /*
+        Writes {@code days} consecutive days of made up weather for a location, starting at
+        {@code firstDate}, straight into the database in one transaction.  Used to build the
+        large histories the benchmarks run against.
+     */
+    static void insertSyntheticHistory(SQLiteDatabase db, long locationRowId, long firstDate,
+                                       int days) {
+        insertSyntheticHistory(db, locationRowId, firstDate, days, true);
+    }
+
+    /*
+        As above; {@code encoded} is false for databases still in the layout from before
+        version 4, which stored the values as they are.
+     */
+    static void insertSyntheticHistory(SQLiteDatabase db, long locationRowId, long firstDate,
+                                       int days, boolean encoded) {
+        HashMap<String, Long> conditionIds = new HashMap<String, Long>();
+        long date = WeatherContract.normalizeDate(firstDate);
+        ContentValues weatherValues = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < days; i++, date += MILLIS_IN_A_DAY) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, (i * 37) % 360);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 20 + (i * 7) % 80);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 990 + (i % 40));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 10 + (i * 13) % 25);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -5 + (i * 11) % 15);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clouds");
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, (i * 3) % 20 * 0.5);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+                db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, encoded ?
+                        WeatherStorage.encode(db, weatherValues, conditionIds) : weatherValues);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     /*
         Students: The functions we provide inside of TestProvider use this utility class to test
         the ContentObserver callbacks using the PollingCheck class that we grabbed from the Android
@@ -122,6 +166,7 @@ public class TestUtilities extends AndroidTestCase {
     static class TestContentObserver extends ContentObserver {
         final HandlerThread mHT;
         boolean mContentChanged;
+        volatile int mChangeCount;
 
         static TestContentObserver getTestContentObserver() {
             HandlerThread ht = new HandlerThread("ContentObserverThread");
@@ -142,6 +187,7 @@ public class TestUtilities extends AndroidTestCase {
 
         @Override
         public void onChange(boolean selfChange, Uri uri) {
+            mChangeCount++;
             mContentChanged = true;
         }
 
@@ -158,6 +204,31 @@ public class TestUtilities extends AndroidTestCase {
             }.run();
             mHT.quit();
         }
+
+        /*
+            Waits for the first notification, then gives any stragglers settleMillis to arrive
+            and returns how many onChange calls this observer received in total.
+         */
+        public int waitForNotificationsAndCount(long settleMillis) throws InterruptedException {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return mContentChanged;
+                }
+            }.run();
+            Thread.sleep(settleMillis);
+            mHT.quit();
+            return mChangeCount;
+        }
+
+        /*
+            Gives notifications settleMillis to arrive and returns how many were received.
+         */
+        public int countNotifications(long settleMillis) throws InterruptedException {
+            Thread.sleep(settleMillis);
+            mHT.quit();
+            return mChangeCount;
+        }
     }
 
     static TestContentObserver getTestContentObserver() {
@@ -42,4 +42,19 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testBuildWeatherLocationWithDateRange() {
+        long endDate = TEST_WEATHER_DATE + 1000 * 60 * 60 * 24 * 3;
+        Uri rangeUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDateRange(
+                TEST_WEATHER_LOCATION, TEST_WEATHER_DATE, endDate);
+        assertEquals("Error: Weather location not parsed back out of the range Uri",
+                TEST_WEATHER_LOCATION,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(rangeUri));
+        assertEquals("Error: Start of the range not parsed back out of the range Uri",
+                WeatherContract.normalizeDate(TEST_WEATHER_DATE),
+                WeatherContract.WeatherEntry.getDateFromUri(rangeUri));
+        assertEquals("Error: End of the range not parsed back out of the range Uri",
+                WeatherContract.normalizeDate(endDate),
+                WeatherContract.WeatherEntry.getRangeEndDateFromUri(rangeUri));
+    }
 }
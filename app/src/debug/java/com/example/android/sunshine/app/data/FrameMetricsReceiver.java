@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.util.Log;
+
+/**
+ * The debug build's way to {@link FrameMetrics} from a shell, as the provider isn't exported.
+ * Only senders holding DUMP (the shell does) get through:
+ * <pre>
+ * adb shell am broadcast -n com.example.android.sunshine.app/.data.FrameMetricsReceiver \
+ *         --ez enabled true
+ * adb shell am broadcast -n com.example.android.sunshine.app/.data.FrameMetricsReceiver
+ * adb shell am broadcast -n com.example.android.sunshine.app/.data.FrameMetricsReceiver \
+ *         --ez reset true
+ * </pre>
+ * "enabled" turns collecting on or off and "reset" clears the metrics, as updating and
+ * deleting "metrics/frames" do.  Every broadcast answers with the metrics, a line per screen,
+ * as its result data, which am prints; they are logged too.
+ */
+public class FrameMetricsReceiver extends BroadcastReceiver {
+
+    private static final String LOG_TAG = FrameMetricsReceiver.class.getSimpleName();
+
+    private static final String EXTRA_ENABLED = "enabled";
+    private static final String EXTRA_RESET = "reset";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (intent.hasExtra(EXTRA_ENABLED)) {
+            FrameMetrics.setEnabled(context, intent.getBooleanExtra(EXTRA_ENABLED, false));
+        }
+        if (intent.getBooleanExtra(EXTRA_RESET, false)) {
+            FrameMetrics.reset();
+        }
+
+        StringBuilder report = new StringBuilder("enabled=")
+                .append(FrameMetrics.isEnabled(context));
+        Cursor metrics = FrameMetrics.toCursor();
+        try {
+            while (metrics.moveToNext()) {
+                report.append('\n');
+                for (int i = 0; i < metrics.getColumnCount(); i++) {
+                    if (i > 0) report.append(' ');
+                    report.append(metrics.getColumnName(i)).append('=')
+                            .append(metrics.getString(i));
+                }
+            }
+        } finally {
+            metrics.close();
+        }
+        Log.i(LOG_TAG, report.toString());
+        if (isOrderedBroadcast()) {
+            setResultData(report.toString());
+        }
+    }
+}
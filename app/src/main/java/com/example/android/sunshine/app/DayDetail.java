@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * Everything {@link DetailFragment} shows of a day, as stored.  The forecast list reads it
+ * along with its rows, so a tapped day can be shown before the detail query runs; see
+ * {@link DetailHandoff}.
+ */
+final class DayDetail {
+
+    final long date;
+    final int weatherId;
+    final double high;
+    final double low;
+    final float humidity;
+    final float pressure;
+    final float windSpeed;
+    final float degrees;
+
+    DayDetail(long date, int weatherId, double high, double low, float humidity, float pressure,
+              float windSpeed, float degrees) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.windSpeed = windSpeed;
+        this.degrees = degrees;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DayDetail)) return false;
+        DayDetail other = (DayDetail) o;
+        return date == other.date
+                && weatherId == other.weatherId
+                && Double.compare(high, other.high) == 0
+                && Double.compare(low, other.low) == 0
+                && Float.compare(humidity, other.humidity) == 0
+                && Float.compare(pressure, other.pressure) == 0
+                && Float.compare(windSpeed, other.windSpeed) == 0
+                && Float.compare(degrees, other.degrees) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (date ^ (date >>> 32)) * 31 + weatherId;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The labels the list, the detail view and the widgets show for a day ("Today, June 24",
+ * "Tomorrow", "Wednesday", "Mon Jun 3"...), cached by julian day and style for the days from
+ * today to {@link #WINDOW_DAYS} ahead.  The cache belongs to one day, in one time zone and
+ * locale: it's thrown away at midnight (checked on every lookup, and by an alarm so the lists
+ * and widgets showing labels are refreshed) and when {@link DayChangeReceiver} sees the time
+ * zone, the clock or the locale change.  Once warm, a lookup doesn't allocate.
+ */
+public final class DayLabels {
+
+    // "Today, June 24" for today, otherwise as FRIENDLY
+    public static final int STYLE_FRIENDLY_LONG_TODAY = 0;
+    // "Today", "Tomorrow", the day name up to a week ahead, then "Mon Jun 3"
+    public static final int STYLE_FRIENDLY = 1;
+    // "Today, June 24", "Wednesday, June 26"
+    public static final int STYLE_FULL_FRIENDLY = 2;
+    // "Today", "Tomorrow", "Wednesday"
+    public static final int STYLE_DAY_NAME = 3;
+    // "June 24"
+    public static final int STYLE_MONTH_DAY = 4;
+    private static final int STYLE_COUNT = 5;
+
+    // The forecast the app fetches
+    static final int WINDOW_DAYS = 14;
+
+    private static volatile DayLabels sCurrent;
+
+    private final TimeZone mTimeZone;
+    private final Locale mLocale;
+    private final int mToday;
+    // The first moment that isn't today any more
+    private final long mValidUntil;
+    // [style][day - mToday], filled as they are asked for.  Racing threads may both format a
+    // label; they come up with equal strings, and Strings are safe to publish without a lock.
+    private final String[][] mLabels = new String[STYLE_COUNT][WINDOW_DAYS];
+
+    private DayLabels(long now) {
+        // getDefault returns a copy, so this one stays as it is while the cache lives
+        mTimeZone = TimeZone.getDefault();
+        mLocale = Locale.getDefault();
+        mToday = julianDay(now);
+        Time midnight = new Time();
+        midnight.setJulianDay(mToday + 1);
+        mValidUntil = midnight.toMillis(true);
+    }
+
+    /**
+     * @return the label of the day {@code dateInMillis} falls on, in one of the STYLE_*s.
+     */
+    public static String get(Context context, long dateInMillis, int style) {
+        DayLabels labels = current(context);
+        int offset = labels.julianDay(dateInMillis) - labels.mToday;
+        if (offset < 0 || offset >= WINDOW_DAYS) {
+            return labels.format(context, dateInMillis, offset, style);
+        }
+        String label = labels.mLabels[style][offset];
+        if (null == label) {
+            label = labels.format(context, dateInMillis, offset, style);
+            labels.mLabels[style][offset] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Formats every label of the window ahead of time.  Call it off the main thread, before
+     * the labels are needed.
+     */
+    public static void warm(Context context) {
+        long day = System.currentTimeMillis();
+        for (int i = 0; i < WINDOW_DAYS; i++, day += 24 * 60 * 60 * 1000L) {
+            for (int style = 0; style < STYLE_COUNT; style++) {
+                get(context, day, style);
+            }
+        }
+    }
+
+    /**
+     * Throws the cache away; the next lookup starts a new one.
+     */
+    public static void invalidate() {
+        sCurrent = null;
+    }
+
+    private static DayLabels current(Context context) {
+        long now = System.currentTimeMillis();
+        DayLabels labels = sCurrent;
+        if (null != labels && now < labels.mValidUntil && labels.mLocale == Locale.getDefault()) {
+            return labels;
+        }
+        labels = new DayLabels(now);
+        sCurrent = labels;
+        scheduleMidnight(context, labels.mValidUntil);
+        return labels;
+    }
+
+    // Wakes DayChangeReceiver when the day changes, so what shows today's labels is refreshed.
+    // Not a wakeup alarm: a sleeping device shows nothing that needs it.
+    private static void scheduleMidnight(Context context, long midnight) {
+        Context appContext = context.getApplicationContext();
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(appContext, 0,
+                new Intent(appContext, DayChangeReceiver.class),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager =
+                (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.RTC, midnight, pendingIntent);
+    }
+
+    private int julianDay(long millis) {
+        return Time.getJulianDay(millis, mTimeZone.getOffset(millis) / 1000);
+    }
+
+    // offset is the day's julian day relative to today
+    private String format(Context context, long dateInMillis, int offset, int style) {
+        switch (style) {
+            case STYLE_FRIENDLY_LONG_TODAY:
+                if (offset == 0) {
+                    return context.getString(R.string.format_full_friendly_date,
+                            context.getString(R.string.today),
+                            format(context, dateInMillis, offset, STYLE_MONTH_DAY));
+                }
+                return format(context, dateInMillis, offset, STYLE_FRIENDLY);
+            case STYLE_FRIENDLY:
+                if (offset < 7) {
+                    // If the input date is less than a week in the future, just return the day name.
+                    return format(context, dateInMillis, offset, STYLE_DAY_NAME);
+                }
+                // Otherwise, use the form "Mon Jun 3"
+                return newFormat("EEE MMM dd").format(dateInMillis);
+            case STYLE_FULL_FRIENDLY:
+                return context.getString(R.string.format_full_friendly_date,
+                        format(context, dateInMillis, offset, STYLE_DAY_NAME),
+                        format(context, dateInMillis, offset, STYLE_MONTH_DAY));
+            case STYLE_DAY_NAME:
+                // If the date is today, return the localized version of "Today" instead of the
+                // actual day name.
+                if (offset == 0) {
+                    return context.getString(R.string.today);
+                } else if (offset == 1) {
+                    return context.getString(R.string.tomorrow);
+                }
+                // Otherwise, the format is just the day of the week (e.g "Wednesday").
+                return newFormat("EEEE").format(dateInMillis);
+            case STYLE_MONTH_DAY:
+                return newFormat("MMMM dd").format(dateInMillis);
+            default:
+                throw new IllegalArgumentException("Unknown day label style: " + style);
+        }
+    }
+
+    private SimpleDateFormat newFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+}
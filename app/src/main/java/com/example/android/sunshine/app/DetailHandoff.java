@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.net.Uri;
+
+/**
+ * The day last tapped in the forecast list, keyed by the Uri the detail view is opened with.
+ * The list already read the whole row, so {@link DetailFragment} shows it straight away, and
+ * the shared element transition on phones starts without waiting for a query; the detail
+ * loader then only confirms it, or refreshes the views if the weather was fetched again in
+ * between.  Only used from the main thread.
+ */
+final class DetailHandoff {
+
+    private static Uri sUri;
+    private static DayDetail sDetail;
+
+    private DetailHandoff() {
+    }
+
+    static void put(Uri uri, DayDetail detail) {
+        sUri = uri;
+        sDetail = detail;
+    }
+
+    /**
+     * @return the day handed off for the Uri, or null if the detail view wasn't opened from
+     * the list (from a widget, a notification, or restored after the process was killed).
+     */
+    static DayDetail get(Uri uri) {
+        return null != uri && uri.equals(sUri) ? sDetail : null;
+    }
+}
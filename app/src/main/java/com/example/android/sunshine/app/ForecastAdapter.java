@@ -16,7 +16,6 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -30,25 +29,36 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.FrameMetrics;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
- * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * {@link ForecastAdapter} exposes a list of weather forecasts, formatted in the background as
+ * {@link ForecastRow}s, to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // The ways a row is bound, as frame metrics report them
+    private static final String BIND_TODAY_LOCAL = "today_local";
+    private static final String BIND_TODAY_ART = "today_art";
+    private static final String BIND_DAY_LOCAL = "day_local";
+    private static final String BIND_DAY_ART = "day_art";
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private List<ForecastRow> mRows = Collections.emptyList();
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private int mIconSize;
+    private FrameMetrics.Screen mFrameMetrics;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,15 +83,18 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            // A tap can land while the row's removal is still waiting for the next layout
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+            mClickHandler.onClick(mRows.get(adapterPosition), this);
             mICM.onClick(this);
         }
     }
 
     public static interface ForecastAdapterOnClickHandler {
-        void onClick(Long date, ForecastAdapterViewHolder vh);
+        /**
+         * @param row the row tapped, so the handler doesn't have to look it up again.
+         */
+        void onClick(ForecastRow row, ForecastAdapterViewHolder vh);
     }
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
@@ -90,6 +103,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mIconSize = PinnedArt.iconSize(context);
+        // A day's _id changes every time its weather is fetched again (the weather table
+        // replaces on conflict), but its date doesn't, and is unique within the list.
+        setHasStableIds(true);
     }
 
     /*
@@ -124,63 +141,54 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+        // Everything was formatted by the loader; binding only hands the strings to the views.
+        ForecastRow row = mRows.get(position);
+        boolean today = getItemViewType(position) == VIEW_TYPE_TODAY;
+        int defaultImage = today ? row.artResource : row.iconResource;
+
+        if ( null != mFrameMetrics ) {
+            mFrameMetrics.onBind(position, null == row.artUrl ?
+                    (today ? BIND_TODAY_LOCAL : BIND_DAY_LOCAL) :
+                    (today ? BIND_TODAY_ART : BIND_DAY_ART));
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == row.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        } else if ( today ) {
+            // Sized by its layout, so not one of the pinned list icons
+            PinnedArt.request(Glide.with(mContext), row.artUrl)
+                    .error(defaultImage)
+                    .crossFade()
+                    .into(forecastAdapterViewHolder.mIconView);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            // Sized up front, rather than once the view is laid out, to be the pinned image
+            PinnedArt.pin(mContext, row.artUrl, mIconSize);
+            PinnedArt.request(Glide.with(mContext), row.artUrl)
+                    .override(mIconSize, mIconSize)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // the animator can use this to re-find the original view.  Keyed on the date, which
+        // unlike the position doesn't change when rows around it are inserted or removed.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.date);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(today ? row.longDay : row.day);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -197,6 +205,18 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mUseTodayLayout = useTodayLayout;
     }
 
+    boolean usesTodayLayout() {
+        return mUseTodayLayout;
+    }
+
+    /**
+     * @param frameMetrics told about every bind, so slow frames can be tied to the rows bound
+     *                     in them.
+     */
+    void setFrameMetrics(FrameMetrics.Screen frameMetrics) {
+        mFrameMetrics = frameMetrics;
+    }
+
     public int getSelectedItemPosition() {
         return mICM.getSelectedItemPosition();
     }
@@ -208,18 +228,81 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).date;
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    /**
+     * Shows new rows, notifying only the positions that were inserted, removed or changed, so a
+     * sync that changes one day rebinds (and reloads the image of) only that day.
+     *
+     * @param rows the rows to show, by ascending date; null for none.  Not copied, so must not
+     *             change afterwards.
+     */
+    void swapRows(List<ForecastRow> rows) {
+        List<ForecastRow> oldRows = mRows;
+        mRows = null == rows ? Collections.<ForecastRow>emptyList() : rows;
+        if (oldRows.isEmpty() || mRows.isEmpty()) {
+            notifyDataSetChanged();
+        } else {
+            dispatchChanges(oldRows, mRows);
+            // A selected day that was removed and inserted again is selected again
+            mICM.confirmCheckedPositions();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    /*
+        Both lists are sorted by date with no date twice, so walking them side by side finds
+        every difference in one pass.  position is where the walk is in the list as the
+        RecyclerView sees it, with the events sent so far applied.
+     */
+    private void dispatchChanges(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+        int oldCount = oldRows.size();
+        int newCount = newRows.size();
+        int i = 0, j = 0, position = 0;
+        int oldTopPosition = RecyclerView.NO_POSITION;
+        while (i < oldCount && j < newCount) {
+            ForecastRow oldRow = oldRows.get(i);
+            ForecastRow newRow = newRows.get(j);
+            if (oldRow.date == newRow.date) {
+                if (i == 0) oldTopPosition = position;
+                if (!oldRow.sameContentAs(newRow)) {
+                    notifyItemChanged(position);
+                }
+                i++;
+                j++;
+                position++;
+            } else if (oldRow.date < newRow.date) {
+                notifyItemRemoved(position);
+                i++;
+            } else {
+                notifyItemInserted(position);
+                j++;
+                position++;
+            }
+        }
+        if (i < oldCount) {
+            notifyItemRangeRemoved(position, oldCount - i);
+        } else if (j < newCount) {
+            notifyItemRangeInserted(position, newCount - j);
+        }
+        // A different day at the top takes the today layout, and the old top day, if it stays,
+        // leaves it.  Only a rebind changes a row's layout.
+        if (mUseTodayLayout && oldRows.get(0).date != newRows.get(0).date) {
+            notifyItemChanged(0);
+            if (oldTopPosition != RecyclerView.NO_POSITION) {
+                notifyItemChanged(oldTopPosition);
+            }
+        }
+    }
+
+    List<ForecastRow> getRows() {
+        return mRows;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -45,9 +45,13 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.FrameMetrics;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
@@ -55,6 +59,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
+    private final FrameMetrics.Screen mFrameMetrics = FrameMetrics.forScreen("forecast_list");
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
     private boolean mHoldForTransition;
@@ -62,7 +67,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     private static final String SELECTED_KEY = "selected_position";
 
+    // Page n of the forecast is loaded by loader FORECAST_LOADER + n
     private static final int FORECAST_LOADER = 0;
+    private static final int FORECAST_PAGE_SIZE = 7;
+    private static final String PAGE_AFTER_KEY = "after";
+
+    // Loaded pages, in order.  A null entry is a page that is (re)loading.
+    private final ArrayList<Cursor> mForecastPages = new ArrayList<Cursor>();
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -80,7 +91,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            // The rest of what the detail view shows, so a tapped day can be handed to it
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -94,6 +110,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
+    static final int COL_WEATHER_HUMIDITY = 9;
+    static final int COL_WEATHER_PRESSURE = 10;
+    static final int COL_WEATHER_WIND_SPEED = 11;
+    static final int COL_WEATHER_DEGREES = 12;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -105,6 +125,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
          * DetailFragmentCallback for when an item has been selected.
          */
         public void onItemSelected(Uri dateUri, ForecastAdapter.ForecastAdapterViewHolder vh);
+
+        /**
+         * Called when forecast rows are about to be drawn after the first page (re)loaded.
+         */
+        public void onForecastShown();
     }
 
     public ForecastFragment() {
@@ -122,10 +147,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
         super.onResume();
+        mFrameMetrics.start(getActivity());
     }
 
     @Override
     public void onPause() {
+        mFrameMetrics.stop();
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
         super.onPause();
@@ -187,19 +214,33 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // use it to populate the RecyclerView it's attached to.
         mForecastAdapter = new ForecastAdapter(getActivity(), new ForecastAdapter.ForecastAdapterOnClickHandler() {
             @Override
-            public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+            public void onClick(ForecastRow row, ForecastAdapter.ForecastAdapterViewHolder vh) {
                 String locationSetting = Utility.getPreferredLocation(getActivity());
-                ((Callback) getActivity())
-                        .onItemSelected(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                                        locationSetting, date),
-                                vh
-                        );
+                Uri dateUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, row.date);
+                // The detail view can show what the list already read without querying for it
+                DetailHandoff.put(dateUri, row.detail);
+                ((Callback) getActivity()).onItemSelected(dateUri, vh);
             }
         }, emptyView, mChoiceMode);
 
+        mForecastAdapter.setFrameMetrics(mFrameMetrics);
+
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Load the art of the rows coming into view before they are bound
+        mRecyclerView.addOnScrollListener(new ForecastPreloader(getActivity(), mForecastAdapter,
+                (LinearLayoutManager) mRecyclerView.getLayoutManager()));
+
+        // Fetch the next page of the forecast before the user reaches the end of this one
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                maybeLoadNextPage();
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -265,15 +306,94 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
+        dropPagesAfter(0);
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
     }
 
+    private void maybeLoadNextPage() {
+        int pageCount = mForecastPages.size();
+        if (pageCount == 0 || !isAdded()) return;
+        Cursor lastPage = mForecastPages.get(pageCount - 1);
+        // Still loading, or a short page: there is nothing after it.
+        if (null == lastPage || lastPage.getCount() < FORECAST_PAGE_SIZE) return;
+        if (null != getLoaderManager().getLoader(FORECAST_LOADER + pageCount)) return;
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible < mForecastAdapter.getItemCount() - FORECAST_PAGE_SIZE / 2) return;
+
+        lastPage.moveToLast();
+        Bundle args = new Bundle();
+        args.putLong(PAGE_AFTER_KEY, lastPage.getLong(COL_WEATHER_DATE));
+        getLoaderManager().initLoader(FORECAST_LOADER + pageCount, args, this);
+    }
+
+    /*
+        The page after a reloaded page is keyed on the last day of its old contents.  If that
+        day moved, the page is restarted on the new one; it keeps showing what it had until the
+        new rows arrive, and its own reload then moves the page after it, and so on.  Only a
+        page that came back short ends the list there.
+     */
+    private void rekeyPageAfter(int page) {
+        int next = page + 1;
+        if (next >= mForecastPages.size()) return;
+        Cursor data = mForecastPages.get(page);
+        if (data.getCount() < FORECAST_PAGE_SIZE) {
+            dropPagesAfter(page);
+            return;
+        }
+        data.moveToLast();
+        Bundle args = new Bundle();
+        args.putLong(PAGE_AFTER_KEY, data.getLong(COL_WEATHER_DATE));
+        Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER + next);
+        if (loader instanceof CursorLoader &&
+                buildPageUri(next, args).equals(((CursorLoader) loader).getUri())) {
+            // Still keyed right; it reloads by itself when its rows change
+            return;
+        }
+        getLoaderManager().restartLoader(FORECAST_LOADER + next, args, this);
+    }
+
+    // Throws the pages after a page away, for when there's nothing after it (any more); they
+    // are fetched again as the user scrolls.
+    private void dropPagesAfter(int page) {
+        for (int i = mForecastPages.size() - 1; i > page; i--) {
+            mForecastPages.remove(i);
+            getLoaderManager().destroyLoader(FORECAST_LOADER + i);
+        }
+    }
+
+    private void setForecastPage(int page, Cursor data) {
+        while (mForecastPages.size() <= page) {
+            mForecastPages.add(null);
+        }
+        mForecastPages.set(page, data);
+    }
+
+    // The adapter sees the rows of the loaded pages as one list, up to the first page that is
+    // still loading.  While a page is being rekeyed it can repeat days of the page before it;
+    // those are left out, so the dates stay ascending and unique.
+    private List<ForecastRow> getMergedRows() {
+        ArrayList<ForecastRow> rows = new ArrayList<ForecastRow>();
+        long lastDate = Long.MIN_VALUE;
+        for (Cursor page : mForecastPages) {
+            if (null == page) break;
+            for (ForecastRow row : ((ForecastLoader.RowCursor) page).rows) {
+                if (row.date > lastDate) {
+                    rows.add(row);
+                    lastDate = row.date;
+                }
+            }
+        }
+        return rows;
+    }
+
     private void openPreferredLocationInMap() {
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
-        if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
+        if (!mForecastPages.isEmpty()) {
+            Cursor c = mForecastPages.get(0);
             if (null != c) {
                 c.moveToPosition(0);
                 String posLat = c.getString(COL_COORD_LAT);
@@ -303,30 +423,46 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // This is called when a new Loader needs to be created.  This
-        // fragment only uses one loader, so we don't care about checking the id.
-
-        // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        // This is called when a new Loader needs to be created.  There is one loader per page
+        // of the forecast.
+
+        // To only show current and future dates, the first page starts today; every other
+        // page starts right after the last day of the page before it.  Pages always come
+        // back sorted by ascending date.
+        return new ForecastLoader(getActivity(),
+                buildPageUri(i - FORECAST_LOADER, bundle),
+                FORECAST_COLUMNS);
+    }
 
+    private Uri buildPageUri(int page, Bundle args) {
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
-                FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+        if (page == 0) {
+            return WeatherContract.WeatherEntry.buildWeatherLocationFirstPage(
+                    locationSetting, System.currentTimeMillis(), FORECAST_PAGE_SIZE);
+        } else {
+            return WeatherContract.WeatherEntry.buildWeatherLocationNextPage(
+                    locationSetting, args.getLong(PAGE_AFTER_KEY), FORECAST_PAGE_SIZE);
+        }
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+        int page = loader.getId() - FORECAST_LOADER;
+        boolean reloaded = page < mForecastPages.size() && null != mForecastPages.get(page);
+        setForecastPage(page, data);
+        if (reloaded) {
+            rekeyPageAfter(page);
+        }
+        mForecastAdapter.swapRows(getMergedRows());
+        mRecyclerView.post(new Runnable() {
+            @Override
+            public void run() {
+                maybeLoadNextPage();
+            }
+        });
+        // Everything below is about the first screen of data
+        if (page != 0) return;
+
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -338,15 +474,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        ((Callback) getActivity()).onForecastShown();
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                            List<ForecastRow> rows = mForecastAdapter.getRows();
+                            int count = rows.size();
                             for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
+                                if ( rows.get(i).date == mInitialSelectedDate ) {
                                     position = i;
                                     break;
                                 }
@@ -384,7 +519,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+        int page = loader.getId() - FORECAST_LOADER;
+        if (page < mForecastPages.size()) {
+            mForecastPages.set(page, null);
+        }
+        mForecastAdapter.swapRows(getMergedRows());
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -432,6 +571,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(getString(R.string.pref_location_status_key))) {
+            // The snapshot's own listener may not have run yet
+            PreferenceSnapshot.refresh(getActivity());
             updateEmptyView();
         }
     }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import java.util.List;
+
+/**
+ * A {@link CursorLoader} for a page of the forecast that also formats the page's rows, on the
+ * loader's thread.  It delivers a {@link RowCursor}; the loader manages it like any other cursor,
+ * and reloads it (so formats it again) when the weather or a display preference changes.
+ */
+class ForecastLoader extends CursorLoader {
+
+    /**
+     * A page's cursor together with its formatted rows.
+     */
+    static final class RowCursor extends CursorWrapper {
+        final List<ForecastRow> rows;
+
+        RowCursor(Cursor cursor, List<ForecastRow> rows) {
+            super(cursor);
+            this.rows = rows;
+        }
+    }
+
+    ForecastLoader(Context context, Uri uri, String[] projection) {
+        super(context, uri, projection, null, null, null);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        // The list, then the detail view and the widgets, read the window's labels next
+        DayLabels.warm(getContext());
+        Cursor cursor = super.loadInBackground();
+        if (null == cursor) return null;
+        try {
+            return new RowCursor(cursor, ForecastRow.fromCursor(getContext(), cursor));
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+}
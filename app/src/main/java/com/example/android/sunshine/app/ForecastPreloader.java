@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Loads the art of the rows about to scroll into view, in the direction of the scroll, at the
+ * size of their list icons, so it's decoded by the time they're bound.  There's no queue of
+ * targets to recycle as Glide's ListPreloader has: the images are pinned by {@link PinnedArt},
+ * which already bounds how many are held.
+ */
+class ForecastPreloader extends RecyclerView.OnScrollListener {
+
+    // About a screen of rows
+    private static final int PRELOAD_ROWS = 8;
+
+    private final Context mContext;
+    private final ForecastAdapter mAdapter;
+    private final LinearLayoutManager mLayoutManager;
+    private final int mIconSize;
+
+    ForecastPreloader(Context context, ForecastAdapter adapter, LinearLayoutManager layoutManager) {
+        mContext = context;
+        mAdapter = adapter;
+        mLayoutManager = layoutManager;
+        mIconSize = PinnedArt.iconSize(context);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        List<ForecastRow> rows = mAdapter.getRows();
+        int first, last;
+        if (dy > 0) {
+            first = mLayoutManager.findLastVisibleItemPosition() + 1;
+            last = Math.min(first + PRELOAD_ROWS, rows.size()) - 1;
+        } else if (dy < 0) {
+            last = mLayoutManager.findFirstVisibleItemPosition() - 1;
+            // The top row, in the today layout, isn't the size of a list icon
+            first = Math.max(last - PRELOAD_ROWS + 1, mAdapter.usesTodayLayout() ? 1 : 0);
+        } else {
+            return;
+        }
+        for (int position = first; position <= last; position++) {
+            String artUrl = rows.get(position).artUrl;
+            if (null != artUrl) {
+                PinnedArt.pin(mContext, artUrl, mIconSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One day of the forecast list, formatted and ready to bind.  Built by {@link ForecastLoader}
+ * on the loader's thread, so {@link ForecastAdapter} only has to copy fields into views.
+ */
+final class ForecastRow {
+
+    final long date;
+    final int weatherId;
+    // The today layout shows the large art, the others the small icon
+    final int artResource;
+    final int iconResource;
+    // null when using the built in graphics
+    final String artUrl;
+    final String day;
+    // "Today, June 24" for today, otherwise the same as day
+    final String longDay;
+    final String description;
+    final String descriptionA11y;
+    final String high;
+    final String highA11y;
+    final String low;
+    final String lowA11y;
+    // The rest of the day, for the detail view
+    final DayDetail detail;
+
+    private ForecastRow(Context context, Cursor cursor, boolean isMetric,
+                        boolean localGraphics) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        day = Utility.getFriendlyDayString(context, date, false);
+        longDay = Utility.getFriendlyDayString(context, date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+
+        high = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), isMetric);
+        highA11y = context.getString(R.string.a11y_high_temp, high);
+        low = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), isMetric);
+        lowA11y = context.getString(R.string.a11y_low_temp, low);
+
+        detail = new DayDetail(date, weatherId,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_PRESSURE),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED),
+                cursor.getFloat(ForecastFragment.COL_WEATHER_DEGREES));
+    }
+
+    /**
+     * @return whether the two rows would bind the same, so a row whose weather was fetched again
+     * but didn't change needn't be rebound.
+     */
+    boolean sameContentAs(ForecastRow other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && TextUtils.equals(artUrl, other.artUrl)
+                && day.equals(other.day)
+                && longDay.equals(other.longDay)
+                && description.equals(other.description)
+                && high.equals(other.high)
+                && low.equals(other.low);
+    }
+
+    /**
+     * Formats every row of a cursor with {@link ForecastFragment}'s projection.  The preferences
+     * are read once for the whole cursor.  Leaves the cursor before its first row.
+     *
+     * @return an unmodifiable list, in cursor order.
+     */
+    static List<ForecastRow> fromCursor(Context context, Cursor cursor) {
+        boolean isMetric = Utility.isMetric(context);
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ArrayList<ForecastRow> rows = new ArrayList<ForecastRow>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows.add(new ForecastRow(context, cursor, isMetric, localGraphics));
+        }
+        cursor.moveToPosition(-1);
+        return Collections.unmodifiableList(rows);
+    }
+}
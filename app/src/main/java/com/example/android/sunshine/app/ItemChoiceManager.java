@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  It follows
+ * the adapter's insertions and removals, so a selection moves with its item; after a wholesale
+ * change it finds the selection again by stable ID, if the adapter has them.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,6 +45,16 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            shiftCheckedPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            shiftCheckedPositions(positionStart, itemCount, -itemCount);
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +64,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -154,6 +166,16 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
+    /**
+     * Call once a batch of insertions and removals has been sent: checked items that were
+     * removed are found again by stable ID if they came back, and unchecked if they didn't.
+     */
+    void confirmCheckedPositions() {
+        if (mAdapter.hasStableIds()) {
+            confirmCheckedPositionsById(mAdapter.getItemCount());
+        }
+    }
+
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
@@ -162,7 +184,8 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            final long lastPosId = lastPos < mAdapter.getItemCount() ?
+                    mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
@@ -188,6 +211,35 @@ public class ItemChoiceManager {
         }
     }
 
+    /*
+        Unchecks the removedCount positions from positionStart, then moves the checked positions
+        after them by delta.  A removed item keeps its checked ID, with positionStart as its last
+        known position: a change is often sent as a removal and an insertion, and the item may
+        be back once they're done.  See confirmCheckedPositions.
+     */
+    private void shiftCheckedPositions(int positionStart, int removedCount, int delta) {
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int position = mCheckStates.keyAt(i);
+            if (position < positionStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            } else if (position >= positionStart + removedCount) {
+                checkStates.put(position + delta, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            int position = mCheckedIdStates.valueAt(i);
+            if (position < positionStart) continue;
+            if (position < positionStart + removedCount) {
+                mCheckedIdStates.setValueAt(i, positionStart);
+            } else {
+                mCheckedIdStates.setValueAt(i, position + delta);
+            }
+        }
+    }
+
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
         boolean checked = isItemChecked(position);
         if (vh.itemView instanceof Checkable) {
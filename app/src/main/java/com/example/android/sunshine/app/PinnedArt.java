@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The art pack images of the forecast list, decoded at the size of a list icon and held for
+ * as long as the process lives.  An art pack has an image per kind of weather, so a list only
+ * ever shows a handful of them; each is kept loaded by a Glide target that is never cleared,
+ * which keeps it among Glide's active resources.  A list icon asking for the same image at
+ * the same size is then handed the decoded image without going to the memory cache, the disk
+ * or the network, however often its condition comes up and whatever else Glide has loaded
+ * since.
+ *
+ * Only used from the main thread.
+ */
+final class PinnedArt {
+
+    // A few art packs' worth, for when the user switches between them
+    private static final int MAX_PINNED = 16;
+
+    private static final Map<String, Target<GlideDrawable>> sPinned =
+            new LinkedHashMap<String, Target<GlideDrawable>>(MAX_PINNED, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Target<GlideDrawable>> eldest) {
+                    if (size() > MAX_PINNED) {
+                        Glide.clear(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    private PinnedArt() {
+    }
+
+    /**
+     * @return the pixel size list icons, and so pinned images, are decoded at.
+     */
+    static int iconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * The request for an art image in the list.  Pinning and the list icons have to build the
+     * same one (with the same size) to share the decoded image, so both start from here: the
+     * transformation an ImageView would otherwise pick from its scale type is made explicit.
+     */
+    static DrawableRequestBuilder<String> request(RequestManager glide, String artUrl) {
+        return glide.load(artUrl).fitCenter();
+    }
+
+    /**
+     * Starts loading an art image at the list icon size, unless it's already pinned.
+     */
+    static void pin(Context context, final String artUrl, int size) {
+        if (sPinned.containsKey(artUrl)) {
+            return;
+        }
+        Target<GlideDrawable> target = new SimpleTarget<GlideDrawable>(size, size) {
+            @Override
+            public void onResourceReady(GlideDrawable resource,
+                                        GlideAnimation<? super GlideDrawable> glideAnimation) {
+                // Holding the request is all it takes
+            }
+
+            @Override
+            public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                // Try again the next time the image is asked for
+                if (sPinned.get(artUrl) == this) {
+                    sPinned.remove(artUrl);
+                }
+            }
+        };
+        sPinned.put(artUrl, target);
+        // The application's request manager isn't paused or cleared with an activity
+        request(Glide.with(context.getApplicationContext()), artUrl).into(target);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * The preferences the app reads all the time (while binding list rows and widget rows, and on
+ * every sync), read once.  {@link #get} returns the current snapshot without touching
+ * SharedPreferences or resources, and without allocating; a single
+ * OnSharedPreferenceChangeListener replaces it whenever one of its preferences changes.
+ *
+ * SharedPreferences calls its listeners in no particular order, so a listener that reads these
+ * preferences (through {@link Utility} or here) must call {@link #refresh} first.
+ */
+public final class PreferenceSnapshot {
+
+    private static volatile PreferenceSnapshot sCurrent;
+    // SharedPreferences only holds weak references to its listeners
+    private static Listener sListener;
+
+    public final String locationSetting;
+    public final boolean isMetric;
+    // The art pack is the format of the art URLs; the built in graphics are a pack of their own
+    public final String artPack;
+    public final boolean usingLocalGraphics;
+    public final @SunshineSyncAdapter.LocationStatus int locationStatus;
+
+    @SuppressWarnings("ResourceType")
+    private PreferenceSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        usingLocalGraphics = artPack.equals(sunshineArtPack);
+        locationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    /**
+     * @return the current snapshot.  The first call reads the preferences and starts listening
+     * for changes.
+     */
+    public static PreferenceSnapshot get(Context context) {
+        PreferenceSnapshot snapshot = sCurrent;
+        if (null != snapshot) return snapshot;
+        return refresh(context);
+    }
+
+    /**
+     * Reads the preferences again, for callers that must see a change before the listener does.
+     *
+     * @return the new snapshot.
+     */
+    public static synchronized PreferenceSnapshot refresh(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        if (null == sListener) {
+            sListener = new Listener(appContext);
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+        }
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(appContext, prefs);
+        sCurrent = snapshot;
+        return snapshot;
+    }
+
+    private static final class Listener implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Context mContext;
+        private final String[] mKeys;
+
+        Listener(Context context) {
+            mContext = context;
+            mKeys = new String[]{
+                    context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_units_key),
+                    context.getString(R.string.pref_art_pack_key),
+                    context.getString(R.string.pref_location_status_key)
+            };
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            for (String snapshotKey : mKeys) {
+                if (snapshotKey.equals(key)) {
+                    refresh(mContext);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+
+/**
+ * The work {@link MainActivity} does when it starts that the first frame doesn't need, run in
+ * stages after it:
+ * <ol>
+ * <li>first frame: the activity's views are about to be drawn for the first time;</li>
+ * <li>idle: the main thread has nothing left to do after that frame, and starts</li>
+ * <li>background: a background thread makes sure the sync account exists (AccountManager
+ * calls, and a first sync if it didn't), checks for Google Play Services and reads whether
+ * the GCM token was sent, then hands back to the main thread to show the Play Services
+ * dialog or start the GCM registration.</li>
+ * </ol>
+ * The stages, and the first forecast row being drawn, are logged as times since onCreate and
+ * show up as sections in systrace.
+ */
+final class StartupTasks {
+
+    private static final String LOG_TAG = StartupTasks.class.getSimpleName();
+
+    private static final int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
+
+    private final MainActivity mActivity;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Set by onDestroy.  A rotation destroys the activity while the stages may still be running;
+    // the new instance starts its own.
+    private boolean mDestroyed;
+
+    // SystemClock.uptimeMillis() of each milestone, or -1 until it's reached
+    private final long mCreated;
+    private long mFirstFrame = -1;
+    private long mBackgroundDone = -1;
+    private long mFirstRow = -1;
+
+    /**
+     * Call at the start of onCreate.
+     */
+    StartupTasks(MainActivity activity) {
+        mActivity = activity;
+        mCreated = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Call at the end of onCreate, once the content view is set: the deferred work is started
+     * after its first frame.
+     */
+    void scheduleAfterFirstFrame() {
+        final View decorView = mActivity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                mFirstFrame = SystemClock.uptimeMillis();
+                log("first frame", mFirstFrame);
+                Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+                    @Override
+                    public boolean queueIdle() {
+                        if (!mDestroyed) {
+                            startBackgroundStage();
+                        }
+                        return false;
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Call when the first forecast rows are about to be drawn; only the first call counts.
+     */
+    void onFirstForecastRow() {
+        if (mFirstRow == -1) {
+            mFirstRow = SystemClock.uptimeMillis();
+            log("first forecast row", mFirstRow);
+        }
+    }
+
+    /**
+     * Call from onDestroy: the stages still to come are dropped, so nothing is shown on, or
+     * done for, an activity that is gone.
+     */
+    void onDestroy() {
+        mDestroyed = true;
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    long getCreatedUptime() {
+        return mCreated;
+    }
+
+    long getFirstFrameUptime() {
+        return mFirstFrame;
+    }
+
+    long getBackgroundDoneUptime() {
+        return mBackgroundDone;
+    }
+
+    long getFirstForecastRowUptime() {
+        return mFirstRow;
+    }
+
+    private void startBackgroundStage() {
+        // The background thread only gets the application, so it doesn't keep a finished
+        // activity around.
+        final Context context = mActivity.getApplicationContext();
+        new Thread("StartupTasks") {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                beginSection("StartupTasks.background");
+                final int playServicesResult;
+                final boolean sentToken;
+                try {
+                    SunshineSyncAdapter.initializeSyncAdapter(context);
+                    playServicesResult =
+                            GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context);
+                    sentToken = PreferenceManager.getDefaultSharedPreferences(context)
+                            .getBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false);
+                } finally {
+                    endSection();
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The thread may post after onDestroy removed the callbacks
+                        if (mDestroyed) return;
+                        onBackgroundStageDone(context, playServicesResult, sentToken);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    private void onBackgroundStageDone(Context context, int playServicesResult, boolean sentToken) {
+        mBackgroundDone = SystemClock.uptimeMillis();
+        log("background stage done", mBackgroundDone);
+
+        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
+        // skip the registration and this device will not receive any downstream messages from
+        // our fake server. Because weather alerts are not a core feature of the app, this should
+        // not affect the behavior of the app, from a user perspective.
+        if (playServicesResult == ConnectionResult.SUCCESS) {
+            // Because this is the initial creation of the app, we'll want to be certain we have
+            // a token. If we do not, then we will start the IntentService that will register this
+            // application with GCM.
+            if (!sentToken) {
+                context.startService(new Intent(context, RegistrationIntentService.class));
+            }
+        } else if (!mActivity.isFinishing()) {
+            // Check the device to make sure it has the Google Play Services APK. If it doesn't,
+            // display a dialog that allows users to download the APK from the Google Play Store
+            // or enable it in the device's system settings.
+            GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
+            if (apiAvailability.isUserResolvableError(playServicesResult)) {
+                apiAvailability.getErrorDialog(mActivity, playServicesResult,
+                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
+            } else {
+                Log.i(LOG_TAG, "This device is not supported.");
+                mActivity.finish();
+            }
+        }
+    }
+
+    private void log(String milestone, long uptime) {
+        Log.i(LOG_TAG, milestone + ": +" + (uptime - mCreated) + "ms");
+    }
+
+    /**
+     * Starts a systrace section on this thread, on releases that have them.
+     */
+    static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * Ends the last section {@link #beginSection} started on this thread.
+     */
+    static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+}
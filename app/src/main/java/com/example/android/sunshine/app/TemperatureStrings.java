@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * Temperatures as the app shows them, whole degrees with the degree sign, formatted ahead of
+ * time for every whole degree weather gets to on Earth, in either unit.  Once the table for the
+ * current locale is built, formatting a temperature in that range is a conversion, a rounding
+ * and an array read.  Anything outside it goes through String.format, as before.
+ */
+final class TemperatureStrings {
+
+    // -90 C is -130 F; 60 C is 140 F
+    private static final int MIN_DEGREES = -130;
+    private static final int MAX_DEGREES = 150;
+
+    private static volatile TemperatureStrings sCurrent;
+
+    private final Locale mLocale;
+    private final String mFormat;
+    // [degrees - MIN_DEGREES]
+    private final String[] mStrings = new String[MAX_DEGREES - MIN_DEGREES + 1];
+
+    private TemperatureStrings(Context context) {
+        mLocale = Locale.getDefault();
+        mFormat = context.getString(R.string.format_temperature);
+        for (int degrees = MIN_DEGREES; degrees <= MAX_DEGREES; degrees++) {
+            mStrings[degrees - MIN_DEGREES] = String.format(mFormat, (double) degrees);
+        }
+    }
+
+    /**
+     * @param temperature in Celsius, as stored.
+     * @param isMetric whether to show Celsius rather than Fahrenheit.
+     */
+    static String format(Context context, double temperature, boolean isMetric) {
+        TemperatureStrings strings = sCurrent;
+        // The format string, and the digits, depend on the locale
+        if (null == strings || strings.mLocale != Locale.getDefault()) {
+            strings = new TemperatureStrings(context);
+            sCurrent = strings;
+        }
+        if (!isMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        // %.0f rounds halves away from zero.  Adding 0.5 could itself round up a value just
+        // under a half, so compare the fraction, which subtracting the floor gives exactly.
+        double magnitude = Math.abs(temperature);
+        double rounded = Math.floor(magnitude);
+        if (magnitude - rounded >= 0.5) {
+            rounded++;
+        }
+        // A negative temperature rounded to zero prints as "-0", as does -0.0 itself
+        boolean negative = Double.doubleToRawLongBits(temperature) < 0;
+        if (negative) {
+            rounded = -rounded;
+        }
+        // NaNs fail both comparisons
+        if (rounded >= MIN_DEGREES && rounded <= MAX_DEGREES && !(rounded == 0 && negative)) {
+            return strings.mStrings[(int) rounded - MIN_DEGREES];
+        }
+        return String.format(strings.mFormat, temperature);
+    }
+}
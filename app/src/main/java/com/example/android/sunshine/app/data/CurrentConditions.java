@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The handful of values the widgets, the wear push, Muzei and the notification show about one
+ * day: condition, description, high and low.
+ *
+ * {@link #get} reads them the cheapest way available: from the forecast snapshot, then through
+ * the provider's {@link WeatherContract#METHOD_GET_CONDITIONS} call, and, before Honeycomb
+ * (which has no ContentResolver.call), through an ordinary query.  The snapshot is skipped
+ * when weather was fetched after it was written, which a {@link Freshness} lookup (a single
+ * row, far cheaper than the conditions query) tells.
+ */
+public final class CurrentConditions {
+
+    private static final String[] CONDITIONS_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    public final long date;
+    public final int weatherId;
+    public final double maxTemp;
+    public final double minTemp;
+    public final String description;
+
+    private CurrentConditions(long date, int weatherId, double maxTemp, double minTemp,
+                              String description) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.maxTemp = maxTemp;
+        this.minTemp = minTemp;
+        this.description = description;
+    }
+
+    /**
+     * @return the conditions on the day of {@code date} at a location, or null if we have no
+     * weather for that day.
+     */
+    public static CurrentConditions get(Context context, String locationSetting, long date) {
+        ForecastSnapshot snapshot = ForecastSnapshot.get(context, locationSetting);
+        if (null != snapshot &&
+                !snapshot.isCurrentFor(Freshness.get(context, locationSetting).fetchedAt)) {
+            snapshot = null;
+        }
+        int day = null == snapshot ? -1 : snapshot.indexOfDay(date);
+        if (day >= 0) {
+            return new CurrentConditions(snapshot.getDate(day), snapshot.getWeatherId(day),
+                    snapshot.getMaxTemp(day), snapshot.getMinTemp(day),
+                    snapshot.getDescription(day));
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return fromCall(context, locationSetting, date);
+        }
+        return fromQuery(context, locationSetting, date);
+    }
+
+    /**
+     * Like {@link #get}, but when there is no weather for the day of {@code date}, the first
+     * day after it that has some: what the today widget and Muzei used to ask for, so they show
+     * the nearest forecast we have rather than nothing.
+     */
+    public static CurrentConditions getOnOrAfter(Context context, String locationSetting,
+                                                 long date) {
+        CurrentConditions conditions = get(context, locationSetting, date);
+        if (null != conditions) return conditions;
+        return fromQuery(context,
+                WeatherEntry.buildWeatherLocationFirstPage(locationSetting, date, 1));
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static CurrentConditions fromCall(Context context, String locationSetting, long date) {
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_DATE, date);
+        Bundle conditions = context.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_CONDITIONS, locationSetting, extras);
+        if (null == conditions) return null;
+        return new CurrentConditions(
+                conditions.getLong(WeatherEntry.COLUMN_DATE),
+                conditions.getInt(WeatherEntry.COLUMN_WEATHER_ID),
+                conditions.getDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                conditions.getDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                conditions.getString(WeatherEntry.COLUMN_SHORT_DESC));
+    }
+
+    static CurrentConditions fromQuery(Context context, String locationSetting, long date) {
+        return fromQuery(context, WeatherEntry.buildWeatherLocationWithDate(locationSetting, date));
+    }
+
+    private static CurrentConditions fromQuery(Context context, Uri uri) {
+        Cursor cursor = context.getContentResolver().query(uri, CONDITIONS_PROJECTION, null,
+                null, null);
+        if (null == cursor) return null;
+        try {
+            if (!cursor.moveToFirst()) return null;
+            return new CurrentConditions(cursor.getLong(0), cursor.getInt(1),
+                    cursor.getDouble(2), cursor.getDouble(3), cursor.getString(4));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The SQLite settings WeatherDbHelper opens the database with.  TestDatabaseProfileBenchmark
+ * runs the app's workloads under a matrix of these and logs the times.  DEFAULT hasn't been
+ * chosen from its figures yet: it is reasoned from the size and nature of the data (see
+ * below), and should be revisited once the benchmark has been run on real devices.
+ *
+ * The page size is a property of the file: {@link #applyPageSize} rebuilds a new database with
+ * it.  The rest are per connection and {@link #apply} sets them every time the database is
+ * opened.
+ */
+final class DatabaseProfile {
+
+    // Values of PRAGMA synchronous
+    static final int SYNCHRONOUS_OFF = 0;
+    static final int SYNCHRONOUS_NORMAL = 1;
+    static final int SYNCHRONOUS_FULL = 2;
+
+    // Values of PRAGMA temp_store
+    static final int TEMP_STORE_DEFAULT = 0;
+    static final int TEMP_STORE_FILE = 1;
+    static final int TEMP_STORE_MEMORY = 2;
+
+    /*
+        4 KB pages match the flash page and the file system block of nearly every device.  The
+        working set (two weeks for a location plus the dictionary) fits a 1 MB cache many times
+        over.  NORMAL skips most of the fsyncs FULL does.  The database is in rollback journal
+        mode (WeatherDbHelper keeps WAL off), where that leaves a small window in which a power
+        cut can corrupt the file, not just lose the last sync.  That is accepted: this is a cache
+        of online data, a corrupt file is deleted and created again when it's next opened, and
+        the next sync fills it.  Sorting for ORDER BY and the stats aggregates stays in memory.
+     */
+    static final DatabaseProfile DEFAULT =
+            new DatabaseProfile(4096, 1024, SYNCHRONOUS_NORMAL, TEMP_STORE_MEMORY);
+
+    final int pageSize;
+    // In KB, rather than in pages, so it means the same whatever the page size
+    final int cacheSizeKb;
+    final int synchronous;
+    final int tempStore;
+
+    DatabaseProfile(int pageSize, int cacheSizeKb, int synchronous, int tempStore) {
+        this.pageSize = pageSize;
+        this.cacheSizeKb = cacheSizeKb;
+        this.synchronous = synchronous;
+        this.tempStore = tempStore;
+    }
+
+    /**
+     * Applies the per-connection settings.  Must be called outside of any transaction.
+     */
+    void apply(SQLiteDatabase db) {
+        // A negative cache size is in KB
+        db.execSQL("PRAGMA cache_size = -" + cacheSizeKb);
+        db.execSQL("PRAGMA synchronous = " + synchronous);
+        db.execSQL("PRAGMA temp_store = " + tempStore);
+    }
+
+    /**
+     * Gives the database the profile's page size, if it hasn't got it.  PRAGMA page_size alone
+     * is ignored once the file has pages, which it has by the time any helper callback runs (the
+     * platform writes android_metadata first), so the file is rebuilt with VACUUM.  That copies
+     * the whole database: only call this on a new one.  Must be called outside of any
+     * transaction, and not in WAL mode, where the page size can't change.
+     */
+    void applyPageSize(SQLiteDatabase db) {
+        if (DatabaseUtils.longForQuery(db, "PRAGMA page_size", null) == pageSize) return;
+        db.execSQL("PRAGMA page_size = " + pageSize);
+        db.execSQL("VACUUM");
+    }
+
+    @Override
+    public String toString() {
+        return "page_size " + pageSize + ", cache_size " + cacheSizeKb + " KB, synchronous " +
+                synchronous + ", temp_store " + tempStore;
+    }
+}
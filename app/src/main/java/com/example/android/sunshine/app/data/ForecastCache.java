@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the joined weather/location rows for "today and the next few days" at
+ * a location.  The notification, the wear push, both widgets, Muzei and the detail screen all
+ * ask for the same handful of rows right after every sync, so the WeatherProvider serves them
+ * from here instead of running the join again.
+ *
+ * The cache is invalidated wholesale on any write that goes through the provider.
+ */
+class ForecastCache {
+
+    // Number of days (starting today) kept per location.  Sync fetches 14 days.
+    static final int DAYS_CACHED = 16;
+
+    // Column types, so we can read the values back out of the cursor without Cursor.getType
+    // (which isn't available on API 10).
+    private static final int TYPE_LONG = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_STRING = 2;
+
+    // Every column the cache knows how to serve, fully qualified.
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DEGREES,
+            LocationEntry.TABLE_NAME + "." + LocationEntry._ID,
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final int[] COLUMN_TYPES = {
+            TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_STRING, TYPE_LONG, TYPE_DOUBLE, TYPE_DOUBLE,
+            TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE,
+            TYPE_LONG, TYPE_STRING, TYPE_STRING, TYPE_DOUBLE, TYPE_DOUBLE
+    };
+
+    // Index of the date column within COLUMNS
+    private static final int INDEX_DATE = 2;
+
+    // Maps both the qualified and (where it is unambiguous) the bare column name to its index
+    // in COLUMNS.  "_id" is deliberately missing: SQLite would reject it as ambiguous.
+    private static final HashMap<String, Integer> sColumnIndex = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            String qualified = COLUMNS[i];
+            String bare = qualified.substring(qualified.indexOf('.') + 1);
+            sColumnIndex.put(qualified, i);
+            if (!bare.equals(WeatherEntry._ID)) {
+                sColumnIndex.put(bare, i);
+            }
+        }
+    }
+
+    //location.location_setting = ? AND date >= ?
+    private static final String sWindowSelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    private static final String sDateAscending = WeatherEntry.COLUMN_DATE + " ASC";
+
+    /**
+     * The cached rows for one location, starting at a given day.
+     */
+    private static class Window {
+        final long startDate;
+        // Rows ordered by ascending date
+        final ArrayList<Object[]> rows;
+        // Whether every row with date >= startDate was loaded.  If not, the window is only
+        // authoritative up to the date of its last row.
+        final boolean complete;
+
+        Window(long startDate, ArrayList<Object[]> rows, boolean complete) {
+            this.startDate = startDate;
+            this.rows = rows;
+            this.complete = complete;
+        }
+
+        long lastAuthoritativeDate() {
+            if (complete) return Long.MAX_VALUE;
+            return (Long) rows.get(rows.size() - 1)[INDEX_DATE];
+        }
+    }
+
+    private final SQLiteQueryBuilder mQueryBuilder;
+    private final HashMap<String, Window> mWindows = new HashMap<String, Window>();
+    // Bumped on every invalidation so that a load racing with a write is never stored.
+    private long mGeneration;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    ForecastCache(SQLiteQueryBuilder joinedQueryBuilder) {
+        mQueryBuilder = joinedQueryBuilder;
+    }
+
+    /**
+     * Serves a "weather/{location}/{date}" query from memory.
+     *
+     * @return a cursor, or null if this query can't be answered by the cache.
+     */
+    Cursor queryDay(SQLiteDatabase db, String locationSetting, long date, String[] projection,
+                    long today) {
+        int[] columns = resolveProjection(projection);
+        if (null == columns || date < today) return null;
+
+        Window window = getWindow(db, locationSetting, today);
+        if (date > window.lastAuthoritativeDate()) return null;
+
+        MatrixCursor cursor = new MatrixCursor(columnNames(projection), 1);
+        for (Object[] row : window.rows) {
+            if ((Long) row[INDEX_DATE] == date) {
+                cursor.addRow(project(row, columns));
+                break;
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Serves a "weather/{location}?date={startDate}" query from memory.
+     *
+     * @return a cursor, or null if this query can't be answered by the cache.
+     */
+    Cursor queryFrom(SQLiteDatabase db, String locationSetting, long startDate,
+                     String[] projection, String sortOrder, long today) {
+        return queryRange(db, locationSetting, startDate, Long.MAX_VALUE, projection, sortOrder,
+                today);
+    }
+
+    /**
+     * Serves a "weather/{location}/{startDate}/{endDate}" query from memory.
+     *
+     * @return a cursor, or null if this query can't be answered by the cache.
+     */
+    Cursor queryRange(SQLiteDatabase db, String locationSetting, long startDate, long endDate,
+                      String[] projection, String sortOrder, long today) {
+        int[] columns = resolveProjection(projection);
+        if (null == columns || startDate < today) return null;
+        if (null != sortOrder && !sDateAscending.equalsIgnoreCase(sortOrder.trim())) return null;
+
+        Window window = getWindow(db, locationSetting, today);
+        if (endDate > window.lastAuthoritativeDate()) return null;
+
+        MatrixCursor cursor = new MatrixCursor(columnNames(projection), window.rows.size());
+        for (Object[] row : window.rows) {
+            long date = (Long) row[INDEX_DATE];
+            if (date >= startDate && date <= endDate) {
+                cursor.addRow(project(row, columns));
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Drops every cached row.  Called for every write that goes through the provider.
+     */
+    synchronized void invalidate() {
+        mGeneration++;
+        mWindows.clear();
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    void resetCounters() {
+        mHits.set(0);
+        mMisses.set(0);
+    }
+
+    private Window getWindow(SQLiteDatabase db, String locationSetting, long today) {
+        long generation;
+        synchronized (this) {
+            Window window = mWindows.get(locationSetting);
+            if (null != window && window.startDate == today) {
+                mHits.incrementAndGet();
+                return window;
+            }
+            generation = mGeneration;
+        }
+        mMisses.incrementAndGet();
+
+        Window window = loadWindow(db, locationSetting, today);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mWindows.put(locationSetting, window);
+            }
+        }
+        return window;
+    }
+
+    private Window loadWindow(SQLiteDatabase db, String locationSetting, long today) {
+        // Ask for one extra row so we know whether the window holds everything from today on.
+        Cursor cursor = mQueryBuilder.query(db,
+                COLUMNS,
+                sWindowSelection,
+                new String[]{locationSetting, Long.toString(today)},
+                null,
+                null,
+                sDateAscending,
+                Integer.toString(DAYS_CACHED + 1));
+
+        ArrayList<Object[]> rows = new ArrayList<Object[]>(DAYS_CACHED);
+        try {
+            while (rows.size() < DAYS_CACHED && cursor.moveToNext()) {
+                Object[] row = new Object[COLUMNS.length];
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    if (cursor.isNull(i)) continue;
+                    switch (COLUMN_TYPES[i]) {
+                        case TYPE_LONG:
+                            row[i] = cursor.getLong(i);
+                            break;
+                        case TYPE_DOUBLE:
+                            row[i] = cursor.getDouble(i);
+                            break;
+                        default:
+                            row[i] = cursor.getString(i);
+                    }
+                }
+                rows.add(row);
+            }
+            return new Window(today, rows, cursor.getCount() <= DAYS_CACHED);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the index into COLUMNS of each projected column, or null if any of them is
+     * unknown to the cache.
+     */
+    private static int[] resolveProjection(String[] projection) {
+        if (null == projection || projection.length == 0) return null;
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            Integer index = sColumnIndex.get(projection[i]);
+            if (null == index) return null;
+            columns[i] = index;
+        }
+        return columns;
+    }
+
+    // SQLite names a result column "table.column" as just "column"; do the same.
+    private static String[] columnNames(String[] projection) {
+        String[] names = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            names[i] = projection[i].substring(projection[i].indexOf('.') + 1);
+        }
+        return names;
+    }
+
+    private static Object[] project(Object[] row, int[] columns) {
+        Object[] projected = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            projected[i] = row[columns[i]];
+        }
+        return projected;
+    }
+}
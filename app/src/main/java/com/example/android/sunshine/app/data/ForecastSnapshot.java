@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A fixed-layout binary copy of the latest forecast for the preferred location, written by the
+ * sync right after it commits and read through a memory mapping.  The widgets, the wear push,
+ * Muzei and the daily notification only need a few numbers about today; this lets them get
+ * those without opening the database.
+ *
+ * The snapshot is only a shortcut.  Readers must fall back to the WeatherProvider whenever
+ * {@link #get} returns null, the day they want isn't in it, or it isn't
+ * {@link #isCurrentFor current} for the location's last fetch.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   header    int magic, int format version, long written-at stamp, int day count,
+ *             int description count, short location length, location bytes (UTF-8, padded)
+ *   days      day count fixed-size records, in ascending date order:
+ *             long date, int weather id, int description index, double min, double max,
+ *             float humidity, float pressure, float wind speed, float degrees
+ *   strings   description count entries of short length + UTF-8 bytes
+ * </pre>
+ */
+public class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.snapshot";
+    private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+
+    private static final int MAGIC = 0x53554e53; // "SUNS"
+    // Bump whenever the layout below changes; older files are then ignored.
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAX_LOCATION_BYTES = 62;
+    private static final int MAX_DAYS = 16;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_WRITTEN_AT = 8;
+    private static final int OFFSET_DAY_COUNT = 16;
+    private static final int OFFSET_STRING_COUNT = 20;
+    private static final int OFFSET_LOCATION = 24;
+    private static final int HEADER_SIZE = OFFSET_LOCATION + 2 + MAX_LOCATION_BYTES;
+
+    private static final int DAY_DATE = 0;
+    private static final int DAY_WEATHER_ID = 8;
+    private static final int DAY_DESCRIPTION = 12;
+    private static final int DAY_MIN_TEMP = 16;
+    private static final int DAY_MAX_TEMP = 24;
+    private static final int DAY_HUMIDITY = 32;
+    private static final int DAY_PRESSURE = 36;
+    private static final int DAY_WIND_SPEED = 40;
+    private static final int DAY_DEGREES = 44;
+    private static final int DAY_SIZE = 48;
+
+    // The snapshot currently mapped, if any.  Everything in this process reads the same file.
+    private static volatile ForecastSnapshot sCurrent;
+
+    private final ByteBuffer mBuffer;
+    private final long mFileModified;
+    private final long mFileLength;
+    private final String mLocationSetting;
+    private final int mDayCount;
+    private final String[] mDescriptions;
+
+    private ForecastSnapshot(ByteBuffer buffer, long fileModified, long fileLength)
+            throws IOException {
+        mBuffer = buffer;
+        mFileModified = fileModified;
+        mFileLength = fileLength;
+        if (fileLength < HEADER_SIZE ||
+                buffer.getInt(OFFSET_MAGIC) != MAGIC ||
+                buffer.getInt(OFFSET_VERSION) != FORMAT_VERSION) {
+            throw new IOException("Not a forecast snapshot");
+        }
+        mLocationSetting = readString(buffer, OFFSET_LOCATION);
+        mDayCount = buffer.getInt(OFFSET_DAY_COUNT);
+        if (mDayCount < 0 || mDayCount > MAX_DAYS) {
+            throw new IOException("Bad day count " + mDayCount);
+        }
+        int offset = HEADER_SIZE + mDayCount * DAY_SIZE;
+        if (offset > buffer.limit()) {
+            throw new IOException("Days run past the end of the snapshot");
+        }
+        // Every description takes at least its length
+        int stringCount = buffer.getInt(OFFSET_STRING_COUNT);
+        if (stringCount < 0 || stringCount > (buffer.limit() - offset) / 2) {
+            throw new IOException("Bad description count " + stringCount);
+        }
+        // Descriptions are interned: decode each one once per mapping
+        mDescriptions = new String[stringCount];
+        for (int i = 0; i < mDescriptions.length; i++) {
+            mDescriptions[i] = readString(buffer, offset);
+            offset += 2 + (buffer.getShort(offset) & 0xffff);
+        }
+        // So getDescription can't go out of bounds later
+        for (int day = 0; day < mDayCount; day++) {
+            int index = buffer.getInt(HEADER_SIZE + day * DAY_SIZE + DAY_DESCRIPTION);
+            if (index < 0 || index >= stringCount) {
+                throw new IOException("Bad description index " + index + " for day " + day);
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot for the given location, or null if there is none (or it is for
+     * another location, or can't be read).
+     */
+    public static ForecastSnapshot get(Context context, String locationSetting) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == 0) {
+            sCurrent = null;
+            return null;
+        }
+
+        ForecastSnapshot snapshot = sCurrent;
+        if (null == snapshot ||
+                snapshot.mFileModified != modified || snapshot.mFileLength != length) {
+            snapshot = map(file, modified, length);
+            sCurrent = snapshot;
+        }
+        if (null == snapshot || !snapshot.mLocationSetting.equals(locationSetting)) return null;
+        return snapshot;
+    }
+
+    private static ForecastSnapshot map(File file, long modified, long length) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            // The mapping stays valid after the file is closed, and after it is replaced.
+            MappedByteBuffer buffer = randomAccessFile.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, length);
+            return new ForecastSnapshot(buffer, modified, length);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable forecast snapshot", e);
+            return null;
+        } finally {
+            if (null != randomAccessFile) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing left to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given days (weather ContentValues, as inserted by the
+     * sync) for a location.  The new file is written next to the old one and renamed over it,
+     * so readers see either the old snapshot or the new one, never a partial file.
+     */
+    public static void write(Context context, String locationSetting, List<ContentValues> days) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File tempFile = new File(context.getFilesDir(), TEMP_FILE_NAME);
+        FileOutputStream out = null;
+        try {
+            byte[] location = locationSetting.getBytes("UTF-8");
+            if (location.length > MAX_LOCATION_BYTES) {
+                // Doesn't fit the fixed header; readers will use the provider.
+                invalidate(context);
+                return;
+            }
+            int dayCount = Math.min(days.size(), MAX_DAYS);
+
+            HashMap<String, Integer> descriptionIndex = new HashMap<String, Integer>();
+            byte[][] descriptions = new byte[dayCount][];
+            int stringsSize = 0;
+            for (int i = 0; i < dayCount; i++) {
+                String description = days.get(i).getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+                if (!descriptionIndex.containsKey(description)) {
+                    byte[] bytes = description.getBytes("UTF-8");
+                    descriptions[descriptionIndex.size()] = bytes;
+                    descriptionIndex.put(description, descriptionIndex.size());
+                    stringsSize += 2 + bytes.length;
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + dayCount * DAY_SIZE + stringsSize);
+            buffer.putInt(OFFSET_MAGIC, MAGIC);
+            buffer.putInt(OFFSET_VERSION, FORMAT_VERSION);
+            buffer.putLong(OFFSET_WRITTEN_AT, System.currentTimeMillis());
+            buffer.putInt(OFFSET_DAY_COUNT, dayCount);
+            buffer.putInt(OFFSET_STRING_COUNT, descriptionIndex.size());
+            buffer.putShort(OFFSET_LOCATION, (short) location.length);
+            buffer.position(OFFSET_LOCATION + 2);
+            buffer.put(location);
+
+            for (int i = 0; i < dayCount; i++) {
+                ContentValues day = days.get(i);
+                int offset = HEADER_SIZE + i * DAY_SIZE;
+                buffer.putLong(offset + DAY_DATE,
+                        WeatherContract.normalizeDate(day.getAsLong(WeatherEntry.COLUMN_DATE)));
+                buffer.putInt(offset + DAY_WEATHER_ID, day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+                buffer.putInt(offset + DAY_DESCRIPTION,
+                        descriptionIndex.get(day.getAsString(WeatherEntry.COLUMN_SHORT_DESC)));
+                buffer.putDouble(offset + DAY_MIN_TEMP, day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+                buffer.putDouble(offset + DAY_MAX_TEMP, day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+                buffer.putFloat(offset + DAY_HUMIDITY, day.getAsFloat(WeatherEntry.COLUMN_HUMIDITY));
+                buffer.putFloat(offset + DAY_PRESSURE, day.getAsFloat(WeatherEntry.COLUMN_PRESSURE));
+                buffer.putFloat(offset + DAY_WIND_SPEED, day.getAsFloat(WeatherEntry.COLUMN_WIND_SPEED));
+                buffer.putFloat(offset + DAY_DEGREES, day.getAsFloat(WeatherEntry.COLUMN_DEGREES));
+            }
+
+            buffer.position(HEADER_SIZE + dayCount * DAY_SIZE);
+            for (int i = 0; i < descriptionIndex.size(); i++) {
+                buffer.putShort((short) descriptions[i].length);
+                buffer.put(descriptions[i]);
+            }
+            buffer.rewind();
+
+            out = new FileOutputStream(tempFile);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Couldn't replace " + file);
+            }
+            sCurrent = null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the forecast snapshot", e);
+            invalidate(context);
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing left to do
+                }
+            }
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Removes the snapshot, so readers go to the provider until the next one is written.  The
+     * sync calls this before it changes the database.
+     */
+    public static void invalidate(Context context) {
+        new File(context.getFilesDir(), FILE_NAME).delete();
+        sCurrent = null;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) throws IOException {
+        // Unsigned, as written; a length running past the end means the file is damaged
+        int length = buffer.getShort(offset) & 0xffff;
+        if (length > buffer.limit() - offset - 2) {
+            throw new IOException("String at " + offset + " runs past the end of the snapshot");
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    /**
+     * @return the index of the given day in the snapshot, or -1 if it isn't there.
+     */
+    public int indexOfDay(long date) {
+        long normalizedDate = WeatherContract.normalizeDate(date);
+        for (int i = 0; i < mDayCount; i++) {
+            if (mBuffer.getLong(HEADER_SIZE + i * DAY_SIZE + DAY_DATE) == normalizedDate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getWrittenAt() {
+        return mBuffer.getLong(OFFSET_WRITTEN_AT);
+    }
+
+    /**
+     * @param fetchedAt when the location's weather was last fetched, see {@link Freshness}.
+     * @return whether the snapshot was written after that fetch.  The sync writes it once the
+     * fetch is committed, so an older snapshot is stale: weather went into the database some
+     * other way since.
+     */
+    public boolean isCurrentFor(long fetchedAt) {
+        return getWrittenAt() >= fetchedAt;
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    public long getDate(int day) {
+        return mBuffer.getLong(HEADER_SIZE + day * DAY_SIZE + DAY_DATE);
+    }
+
+    public int getWeatherId(int day) {
+        return mBuffer.getInt(HEADER_SIZE + day * DAY_SIZE + DAY_WEATHER_ID);
+    }
+
+    public String getDescription(int day) {
+        return mDescriptions[mBuffer.getInt(HEADER_SIZE + day * DAY_SIZE + DAY_DESCRIPTION)];
+    }
+
+    public double getMinTemp(int day) {
+        return mBuffer.getDouble(HEADER_SIZE + day * DAY_SIZE + DAY_MIN_TEMP);
+    }
+
+    public double getMaxTemp(int day) {
+        return mBuffer.getDouble(HEADER_SIZE + day * DAY_SIZE + DAY_MAX_TEMP);
+    }
+
+    public float getHumidity(int day) {
+        return mBuffer.getFloat(HEADER_SIZE + day * DAY_SIZE + DAY_HUMIDITY);
+    }
+
+    public float getPressure(int day) {
+        return mBuffer.getFloat(HEADER_SIZE + day * DAY_SIZE + DAY_PRESSURE);
+    }
+
+    public float getWindSpeed(int day) {
+        return mBuffer.getFloat(HEADER_SIZE + day * DAY_SIZE + DAY_WIND_SPEED);
+    }
+
+    public float getDegrees(int day) {
+        return mBuffer.getFloat(HEADER_SIZE + day * DAY_SIZE + DAY_DEGREES);
+    }
+}
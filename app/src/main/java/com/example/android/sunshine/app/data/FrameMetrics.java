@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.SparseIntArray;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import com.example.android.sunshine.app.data.WeatherContract.FrameMetricsEntry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Frame times of the app's screens, collected while a screen is showing: a histogram of frame
+ * durations, the number of slow (a missed vsync or worse) and frozen frames, and which adapter
+ * positions, and through which bind path, were bound in the slow ones.  A frame's duration is
+ * the time between two Choreographer callbacks, so it's only measured on Jelly Bean and up.
+ *
+ * Collecting costs a callback every frame, so it's off unless turned on through the
+ * "metrics/frames" Uri (updating it with {@link FrameMetricsEntry#COLUMN_ENABLED}), which also
+ * reads the metrics, and resets them when deleted.  Turning it on is remembered across
+ * restarts.  The provider isn't exported; debug builds have FrameMetricsReceiver for the shell.
+ */
+public final class FrameMetrics {
+
+    private static final String PREF_ENABLED = "frame_metrics_enabled";
+
+    private static final long NANOS_IN_A_MILLI = 1000 * 1000;
+    private static final long NANOS_IN_A_SECOND = 1000 * NANOS_IN_A_MILLI;
+    // For displays that don't know their refresh rate
+    private static final float DEFAULT_REFRESH_RATE = 60;
+    private static final int BUCKETS = FrameMetricsEntry.FRAME_BUCKET_BOUNDS_MILLIS.length + 1;
+
+    // null until first read from the preferences
+    private static volatile Boolean sEnabled;
+
+    private static final Map<String, Screen> sScreens = new LinkedHashMap<String, Screen>();
+
+    private FrameMetrics() {
+    }
+
+    /**
+     * @return the metrics of a screen, created the first time it is asked for.
+     */
+    public static Screen forScreen(String name) {
+        synchronized (sScreens) {
+            Screen screen = sScreens.get(name);
+            if (null == screen) {
+                screen = new Screen(name);
+                sScreens.put(name, screen);
+            }
+            return screen;
+        }
+    }
+
+    public static boolean isEnabled(Context context) {
+        Boolean enabled = sEnabled;
+        if (null == enabled) {
+            enabled = PreferenceManager.getDefaultSharedPreferences(context)
+                    .getBoolean(PREF_ENABLED, false);
+            sEnabled = enabled;
+        }
+        return enabled;
+    }
+
+    static void setEnabled(Context context, boolean enabled) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putBoolean(PREF_ENABLED, enabled).apply();
+        sEnabled = enabled;
+    }
+
+    static void reset() {
+        synchronized (sScreens) {
+            for (Screen screen : sScreens.values()) {
+                screen.reset();
+            }
+        }
+    }
+
+    /**
+     * @return one row per screen that has drawn a frame since the last reset.
+     */
+    static Cursor toCursor() {
+        String[] columns = new String[6 + BUCKETS];
+        columns[0] = FrameMetricsEntry.COLUMN_SCREEN;
+        columns[1] = FrameMetricsEntry.COLUMN_FRAMES;
+        columns[2] = FrameMetricsEntry.COLUMN_SLOW_FRAMES;
+        columns[3] = FrameMetricsEntry.COLUMN_FROZEN_FRAMES;
+        columns[4] = FrameMetricsEntry.COLUMN_SLOW_BIND_POSITIONS;
+        columns[5] = FrameMetricsEntry.COLUMN_SLOW_BIND_PATHS;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            columns[6 + bucket] = FrameMetricsEntry.getFrameBucketColumn(bucket);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(columns);
+        synchronized (sScreens) {
+            for (Screen screen : sScreens.values()) {
+                Object[] row = screen.toRow(columns.length);
+                if (null != row) {
+                    cursor.addRow(row);
+                }
+            }
+        }
+        return cursor;
+    }
+
+    private static int bucketOf(long nanos) {
+        long[] bounds = FrameMetricsEntry.FRAME_BUCKET_BOUNDS_MILLIS;
+        for (int i = 0; i < bounds.length; i++) {
+            if (nanos <= bounds[i] * NANOS_IN_A_MILLI) return i;
+        }
+        return bounds.length;
+    }
+
+    /**
+     * The metrics of one screen.  {@link #start} and {@link #stop} it as the screen is resumed
+     * and paused, and tell it what the screen binds with {@link #onBind}; all three on the
+     * main thread.
+     */
+    public static final class Screen {
+
+        private final String mName;
+        private final Object mFrameCallback;
+        private boolean mRunning;
+        private long mLastFrameNanos;
+        // Set by start, from the refresh rate of the display
+        private long mSlowFrameNanos;
+
+        // Positions and paths bound since the last frame, kept only while collecting
+        private int[] mPendingPositions = new int[16];
+        private String[] mPendingPaths = new String[16];
+        private int mPendingCount;
+
+        // Guarded by this, as the provider reads them from a binder thread
+        private long mFrames;
+        private long mSlowFrames;
+        private long mFrozenFrames;
+        private final long[] mHistogram = new long[BUCKETS];
+        // Times each position was bound in a slow frame
+        private final SparseIntArray mSlowPositions = new SparseIntArray();
+        // Times each bind path was taken in a slow frame
+        private final Map<String, Integer> mSlowPaths = new LinkedHashMap<String, Integer>();
+
+        private Screen(String name) {
+            mName = name;
+            mFrameCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ?
+                    newFrameCallback() : null;
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        private Object newFrameCallback() {
+            return new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+
+        /**
+         * Starts timing frames, if collecting is on.
+         */
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        public void start(Context context) {
+            if (mRunning || null == mFrameCallback || !isEnabled(context)) return;
+            mRunning = true;
+            mLastFrameNanos = 0;
+            float refreshRate = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+                    .getDefaultDisplay().getRefreshRate();
+            if (refreshRate <= 0) {
+                refreshRate = DEFAULT_REFRESH_RATE;
+            }
+            mSlowFrameNanos = (long) (FrameMetricsEntry.SLOW_FRAME_REFRESH_INTERVALS *
+                    NANOS_IN_A_SECOND / refreshRate);
+            mPendingCount = 0;
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        public void stop() {
+            if (!mRunning) return;
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        }
+
+        /**
+         * Notes that the screen bound a position (or -1 for a screen without positions) in the
+         * frame being drawn.
+         *
+         * @param path how it was bound: a constant, so noting a bind doesn't allocate.
+         */
+        public void onBind(int position, String path) {
+            if (!mRunning) return;
+            if (mPendingCount == mPendingPositions.length) {
+                int[] positions = new int[mPendingCount * 2];
+                System.arraycopy(mPendingPositions, 0, positions, 0, mPendingCount);
+                mPendingPositions = positions;
+                String[] paths = new String[mPendingCount * 2];
+                System.arraycopy(mPendingPaths, 0, paths, 0, mPendingCount);
+                mPendingPaths = paths;
+            }
+            mPendingPositions[mPendingCount] = position;
+            mPendingPaths[mPendingCount] = path;
+            mPendingCount++;
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        private void onFrame(long frameTimeNanos) {
+            if (!mRunning) return;
+            if (!Boolean.TRUE.equals(sEnabled)) {
+                stop();
+                return;
+            }
+            // Binds since the last callback were in the frame that ends now
+            if (0 != mLastFrameNanos) {
+                record(frameTimeNanos - mLastFrameNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            mPendingCount = 0;
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        }
+
+        private synchronized void record(long nanos) {
+            mFrames++;
+            mHistogram[bucketOf(nanos)]++;
+            if (nanos > FrameMetricsEntry.FROZEN_FRAME_MILLIS * NANOS_IN_A_MILLI) {
+                mFrozenFrames++;
+            }
+            if (nanos > mSlowFrameNanos) {
+                mSlowFrames++;
+                for (int i = 0; i < mPendingCount; i++) {
+                    int position = mPendingPositions[i];
+                    mSlowPositions.put(position, mSlowPositions.get(position) + 1);
+                    Integer count = mSlowPaths.get(mPendingPaths[i]);
+                    mSlowPaths.put(mPendingPaths[i], null == count ? 1 : count + 1);
+                }
+            }
+        }
+
+        private synchronized void reset() {
+            mFrames = 0;
+            mSlowFrames = 0;
+            mFrozenFrames = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                mHistogram[i] = 0;
+            }
+            mSlowPositions.clear();
+            mSlowPaths.clear();
+        }
+
+        private synchronized Object[] toRow(int columnCount) {
+            if (mFrames == 0) return null;
+            Object[] row = new Object[columnCount];
+            row[0] = mName;
+            row[1] = mFrames;
+            row[2] = mSlowFrames;
+            row[3] = mFrozenFrames;
+            // "position:count" and "path:count", comma separated
+            StringBuilder positions = new StringBuilder();
+            for (int i = 0; i < mSlowPositions.size(); i++) {
+                if (i > 0) positions.append(',');
+                positions.append(mSlowPositions.keyAt(i)).append(':')
+                        .append(mSlowPositions.valueAt(i));
+            }
+            row[4] = positions.toString();
+            StringBuilder paths = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : mSlowPaths.entrySet()) {
+                if (paths.length() > 0) paths.append(',');
+                paths.append(entry.getKey()).append(':').append(entry.getValue());
+            }
+            row[5] = paths.toString();
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                row[6 + bucket] = mHistogram[bucket];
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/**
+ * When the weather of a location was last fetched, and by which
+ * {@link WeatherContract#SOURCE_VERSION}.  Lets the sync, the wear push and the widgets skip a
+ * refresh when what we have is recent enough.
+ *
+ * {@link #get} asks the provider's {@link WeatherContract#METHOD_GET_FRESHNESS} call, and,
+ * before Honeycomb (which has no ContentResolver.call), runs an ordinary query.
+ */
+public final class Freshness {
+
+    private static final String[] FRESHNESS_PROJECTION = {
+            LocationEntry.COLUMN_FETCHED_AT,
+            LocationEntry.COLUMN_SOURCE_VERSION
+    };
+
+    // For locations we know nothing about
+    private static final Freshness NEVER = new Freshness(0, 0);
+
+    public final long fetchedAt;
+    public final int sourceVersion;
+
+    private Freshness(long fetchedAt, int sourceVersion) {
+        this.fetchedAt = fetchedAt;
+        this.sourceVersion = sourceVersion;
+    }
+
+    /**
+     * @return the freshness of a location's weather.  A location we have no weather for was
+     * fetched at 0.
+     */
+    public static Freshness get(Context context, String locationSetting) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return fromCall(context, locationSetting);
+        }
+        return fromQuery(context, locationSetting);
+    }
+
+    /**
+     * @return whether the weather was fetched less than {@code maxAgeMillis} ago by the current
+     * source version.
+     */
+    public boolean isFresh(long maxAgeMillis) {
+        long age = System.currentTimeMillis() - fetchedAt;
+        // A clock set back makes the age negative; don't trust that
+        return sourceVersion >= WeatherContract.SOURCE_VERSION && age >= 0 && age < maxAgeMillis;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static Freshness fromCall(Context context, String locationSetting) {
+        Bundle freshness = context.getContentResolver().call(LocationEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_FRESHNESS, locationSetting, null);
+        if (null == freshness) return NEVER;
+        return new Freshness(
+                freshness.getLong(LocationEntry.COLUMN_FETCHED_AT),
+                freshness.getInt(LocationEntry.COLUMN_SOURCE_VERSION));
+    }
+
+    static Freshness fromQuery(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(LocationEntry.CONTENT_URI,
+                FRESHNESS_PROJECTION,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (null == cursor) return NEVER;
+        try {
+            if (!cursor.moveToFirst()) return NEVER;
+            return new Freshness(cursor.getLong(0), cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Finds the stored locations nearest to a point, for the "location/near/{lat}/{lon}" route.
+ *
+ * Candidates come from a bounding box around the point: through the rtree where SQLite has the
+ * module, or through the coordinate index where it hasn't.  The box grows until enough of its
+ * locations also lie within the circle it was drawn around; only then can nothing outside the
+ * box be closer.  Distances are computed here, as SQLite on Android has no trigonometry.
+ */
+class NearestLocations {
+
+    // Columns of the rtree table
+    static final String RTREE_MIN_LAT = "min_lat";
+    static final String RTREE_MAX_LAT = "max_lat";
+    static final String RTREE_MIN_LONG = "min_long";
+    static final String RTREE_MAX_LONG = "max_long";
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    // Half the side of the first box.  About 55 km, where most fixes find their city.
+    private static final double INITIAL_RADIUS_DEGREES = 0.5;
+
+    // The columns of every row, in this order
+    private static final String[] COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_DISTANCE
+    };
+    private static final int INDEX_LAT = 3;
+    private static final int INDEX_LONG = 4;
+    private static final int INDEX_DISTANCE = 5;
+
+    private static final String sLocationColumns =
+            LocationEntry.TABLE_NAME + "." + LocationEntry._ID + ", " +
+                    LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_CITY_NAME + ", " +
+                    LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                    LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_COORD_LONG;
+
+    // Every location whose (rounded) box overlaps the search box.  The rtree keeps 32 bit
+    // floats rounded outwards, so test for overlap rather than containment.
+    private static final String sRtreeBoxQuery = "SELECT " + sLocationColumns + " FROM " +
+            LocationEntry.RTREE_TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME +
+            " ON " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID + " = " +
+            LocationEntry.RTREE_TABLE_NAME + ".id WHERE " +
+            RTREE_MAX_LAT + " >= ? AND " + RTREE_MIN_LAT + " <= ? AND " +
+            RTREE_MAX_LONG + " >= ? AND " + RTREE_MIN_LONG + " <= ?";
+
+    private static final String sIndexBoxQuery = "SELECT " + sLocationColumns + " FROM " +
+            LocationEntry.TABLE_NAME + " WHERE " +
+            LocationEntry.COLUMN_COORD_LAT + " BETWEEN ? AND ? AND " +
+            LocationEntry.COLUMN_COORD_LONG + " BETWEEN ? AND ?";
+
+    private static final Comparator<Object[]> sByDistance = new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] lhs, Object[] rhs) {
+            return Double.compare((Double) lhs[INDEX_DISTANCE], (Double) rhs[INDEX_DISTANCE]);
+        }
+    };
+
+    // Whether the database has the rtree.  The same SQLite library always gives the same
+    // answer, so it's only looked up once.
+    private volatile Boolean mHasRtree;
+
+    /**
+     * @return the {@code limit} locations nearest to the point, nearest first.
+     */
+    Cursor query(SQLiteDatabase db, double latitude, double longitude, int limit,
+                 String[] projection) {
+        int[] columns = resolveProjection(projection);
+
+        double radius = INITIAL_RADIUS_DEGREES;
+        ArrayList<Object[]> candidates;
+        while (true) {
+            candidates = queryBox(db, latitude, longitude, radius);
+            double reachKm = radius * KM_PER_DEGREE;
+            int reached = 0;
+            for (Object[] row : candidates) {
+                if ((Double) row[INDEX_DISTANCE] <= reachKm) reached++;
+            }
+            if (reached >= limit || radius >= 180) break;
+            radius *= 2;
+        }
+        Collections.sort(candidates, sByDistance);
+
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = COLUMNS[columns[i]];
+        }
+        int count = Math.min(limit, candidates.size());
+        MatrixCursor cursor = new MatrixCursor(names, count);
+        for (int i = 0; i < count; i++) {
+            Object[] row = candidates.get(i);
+            Object[] projected = new Object[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                projected[column] = row[columns[column]];
+            }
+            cursor.addRow(projected);
+        }
+        return cursor;
+    }
+
+    /*
+        Every location in the smallest box holding the circle of {@code radius} degrees around
+        the point, with its distance filled in.  Near the poles, or across the date line, the
+        box spans every longitude.
+     */
+    private ArrayList<Object[]> queryBox(SQLiteDatabase db, double latitude, double longitude,
+                                         double radius) {
+        double minLat = latitude - radius;
+        double maxLat = latitude + radius;
+        double minLong = -180;
+        double maxLong = 180;
+        double sinRadius = Math.sin(Math.toRadians(Math.min(radius, 90)));
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        if (minLat > -90 && maxLat < 90 && sinRadius < cosLatitude) {
+            double longRadius = Math.toDegrees(Math.asin(sinRadius / cosLatitude));
+            if (longitude - longRadius >= -180 && longitude + longRadius <= 180) {
+                minLong = longitude - longRadius;
+                maxLong = longitude + longRadius;
+            }
+        }
+
+        String[] args = {
+                Double.toString(minLat), Double.toString(maxLat),
+                Double.toString(minLong), Double.toString(maxLong)
+        };
+        Cursor cursor = db.rawQuery(hasRtree(db) ? sRtreeBoxQuery : sIndexBoxQuery, args);
+        ArrayList<Object[]> rows = new ArrayList<Object[]>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[COLUMNS.length];
+                row[0] = cursor.getLong(0);
+                row[1] = cursor.getString(1);
+                row[2] = cursor.getString(2);
+                row[INDEX_LAT] = cursor.getDouble(INDEX_LAT);
+                row[INDEX_LONG] = cursor.getDouble(INDEX_LONG);
+                row[INDEX_DISTANCE] = distanceKm(latitude, longitude,
+                        cursor.getDouble(INDEX_LAT), cursor.getDouble(INDEX_LONG));
+                rows.add(row);
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private boolean hasRtree(SQLiteDatabase db) {
+        Boolean hasRtree = mHasRtree;
+        if (null == hasRtree) {
+            hasRtree = DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                    new String[]{LocationEntry.RTREE_TABLE_NAME}) > 0;
+            mHasRtree = hasRtree;
+        }
+        return hasRtree;
+    }
+
+    /**
+     * @return the great-circle distance between two points, in kilometers.
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2,
+                             double longitude2) {
+        double sinHalfLat = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLong = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfLat * sinHalfLat + Math.cos(Math.toRadians(latitude1)) *
+                Math.cos(Math.toRadians(latitude2)) * sinHalfLong * sinHalfLong;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /*
+        The index into COLUMNS of each projected column; everything for a null projection.
+        Qualified location columns are accepted, just like the location route does.
+     */
+    private static int[] resolveProjection(String[] projection) {
+        if (null == projection) {
+            int[] all = new int[COLUMNS.length];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return all;
+        }
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String column = projection[i];
+            if (column.startsWith(LocationEntry.TABLE_NAME + ".")) {
+                column = column.substring(LocationEntry.TABLE_NAME.length() + 1);
+            }
+            columns[i] = -1;
+            for (int j = 0; j < COLUMNS.length; j++) {
+                if (COLUMNS[j].equals(column)) columns[i] = j;
+            }
+            if (columns[i] == -1) {
+                throw new IllegalArgumentException("Invalid column " + projection[i]);
+            }
+        }
+        return columns;
+    }
+}
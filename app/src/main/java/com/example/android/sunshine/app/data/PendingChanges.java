@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Collects the rows touched by one provider operation (or one batch of operations) and turns
+ * them into as few, as narrowly scoped, change notifications as possible.
+ *
+ * A single changed day at a location notifies "weather/{location}/{date}"; several changed days
+ * at a location notify "weather/{location}" once.  Anything we can't scope falls back to the
+ * broad weather URI.
+ */
+class PendingChanges {
+
+    // location _id -> changed (normalized) dates at that location
+    private final HashMap<Long, HashSet<Long>> mWeatherChanges = new HashMap<Long, HashSet<Long>>();
+    private boolean mAllWeatherChanged;
+    private boolean mLocationsChanged;
+
+    void weatherChanged(long locationId, long date) {
+        HashSet<Long> dates = mWeatherChanges.get(locationId);
+        if (null == dates) {
+            dates = new HashSet<Long>();
+            mWeatherChanges.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    void allWeatherChanged() {
+        mAllWeatherChanged = true;
+    }
+
+    void locationsChanged() {
+        mLocationsChanged = true;
+    }
+
+    boolean isEmpty() {
+        return !mAllWeatherChanged && !mLocationsChanged && mWeatherChanges.isEmpty();
+    }
+
+    void clear() {
+        mWeatherChanges.clear();
+        mAllWeatherChanged = false;
+        mLocationsChanged = false;
+    }
+
+    /**
+     * Sends the notifications for everything collected so far, then forgets about it.  Must be
+     * called after the changes have been committed.
+     */
+    void dispatch(SQLiteDatabase db, ContentResolver resolver) {
+        if (mLocationsChanged) {
+            resolver.notifyChange(LocationEntry.CONTENT_URI, null);
+        }
+        if (mAllWeatherChanged) {
+            resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+        } else {
+            for (Map.Entry<Long, HashSet<Long>> entry : mWeatherChanges.entrySet()) {
+                String locationSetting = getLocationSetting(db, entry.getKey());
+                if (null == locationSetting) {
+                    // Can't tell who is watching this location, so tell everyone once.
+                    resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+                    break;
+                }
+                HashSet<Long> dates = entry.getValue();
+                if (dates.size() == 1) {
+                    resolver.notifyChange(WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting, dates.iterator().next()), null);
+                } else {
+                    resolver.notifyChange(WeatherEntry.buildWeatherLocation(locationSetting), null);
+                }
+            }
+        }
+        clear();
+    }
+
+    private static String getLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
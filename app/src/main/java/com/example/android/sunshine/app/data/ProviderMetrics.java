@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.MetricsEntry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Call counts, rows touched and latency histograms for every (route, operation) pair of the
+ * WeatherProvider.  Recording is lock-free: every slot is an atomic long, so binder threads
+ * never wait on each other to record a call.
+ *
+ * A snapshot of the counters is read through the "metrics/provider" Uri, and deleting that
+ * Uri resets them.
+ */
+class ProviderMetrics {
+
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+    static final int CALL = 5;
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulkInsert", "update", "delete", "call"
+    };
+    private static final int OPERATIONS = OPERATION_NAMES.length;
+
+    private static final int BUCKETS = MetricsEntry.LATENCY_BUCKET_BOUNDS_MICROS.length + 1;
+
+    // UriMatcher codes, and the path patterns they are reported as
+    private final int[] mRoutes;
+    private final String[] mRouteNames;
+
+    // One slot per (route, operation)
+    private final AtomicLongArray mCounts;
+    private final AtomicLongArray mRows;
+    private final AtomicLongArray mTotalNanos;
+    private final AtomicLongArray mMaxNanos;
+    // BUCKETS slots per (route, operation)
+    private final AtomicLongArray mHistogram;
+
+    ProviderMetrics(int[] routes, String[] routeNames) {
+        mRoutes = routes;
+        mRouteNames = routeNames;
+        int slots = routes.length * OPERATIONS;
+        mCounts = new AtomicLongArray(slots);
+        mRows = new AtomicLongArray(slots);
+        mTotalNanos = new AtomicLongArray(slots);
+        mMaxNanos = new AtomicLongArray(slots);
+        mHistogram = new AtomicLongArray(slots * BUCKETS);
+    }
+
+    /**
+     * Records one call.  Calls on routes we don't know about (which the provider rejects
+     * anyway) are ignored.
+     */
+    void record(int route, int operation, int rows, long elapsedNanos) {
+        int routeIndex = indexOfRoute(route);
+        if (routeIndex < 0) return;
+        int slot = routeIndex * OPERATIONS + operation;
+
+        mCounts.incrementAndGet(slot);
+        mRows.addAndGet(slot, rows);
+        mTotalNanos.addAndGet(slot, elapsedNanos);
+        long max;
+        do {
+            max = mMaxNanos.get(slot);
+        } while (elapsedNanos > max && !mMaxNanos.compareAndSet(slot, max, elapsedNanos));
+        mHistogram.incrementAndGet(slot * BUCKETS + bucketOf(elapsedNanos / 1000));
+    }
+
+    void reset() {
+        for (int i = 0; i < mCounts.length(); i++) {
+            mCounts.set(i, 0);
+            mRows.set(i, 0);
+            mTotalNanos.set(i, 0);
+            mMaxNanos.set(i, 0);
+        }
+        for (int i = 0; i < mHistogram.length(); i++) {
+            mHistogram.set(i, 0);
+        }
+    }
+
+    /**
+     * @return one row per (route, operation) that was called since the last reset.  Each
+     * counter is read atomically, but the row as a whole isn't a consistent snapshot while
+     * calls are being recorded.
+     */
+    Cursor toCursor() {
+        String[] columns = new String[6 + BUCKETS];
+        columns[0] = MetricsEntry.COLUMN_ROUTE;
+        columns[1] = MetricsEntry.COLUMN_OPERATION;
+        columns[2] = MetricsEntry.COLUMN_COUNT;
+        columns[3] = MetricsEntry.COLUMN_ROWS;
+        columns[4] = MetricsEntry.COLUMN_TOTAL_MICROS;
+        columns[5] = MetricsEntry.COLUMN_MAX_MICROS;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            columns[6 + bucket] = MetricsEntry.getLatencyBucketColumn(bucket);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(columns);
+        for (int routeIndex = 0; routeIndex < mRoutes.length; routeIndex++) {
+            for (int operation = 0; operation < OPERATIONS; operation++) {
+                int slot = routeIndex * OPERATIONS + operation;
+                long count = mCounts.get(slot);
+                if (count == 0) continue;
+
+                Object[] row = new Object[columns.length];
+                row[0] = mRouteNames[routeIndex];
+                row[1] = OPERATION_NAMES[operation];
+                row[2] = count;
+                row[3] = mRows.get(slot);
+                row[4] = mTotalNanos.get(slot) / 1000;
+                row[5] = mMaxNanos.get(slot) / 1000;
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    row[6 + bucket] = mHistogram.get(slot * BUCKETS + bucket);
+                }
+                cursor.addRow(row);
+            }
+        }
+        return cursor;
+    }
+
+    private int indexOfRoute(int route) {
+        for (int i = 0; i < mRoutes.length; i++) {
+            if (mRoutes[i] == route) return i;
+        }
+        return -1;
+    }
+
+    private static int bucketOf(long micros) {
+        long[] bounds = MetricsEntry.LATENCY_BUCKET_BOUNDS_MICROS;
+        for (int i = 0; i < bounds.length; i++) {
+            if (micros <= bounds[i]) return i;
+        }
+        return bounds.length;
+    }
+}
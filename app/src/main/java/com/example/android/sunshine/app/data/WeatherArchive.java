@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A binary copy of the location and weather tables, for seeding devices, reproducing field
+ * issues and restoring data without a sync.  Backs WeatherContract.METHOD_EXPORT and
+ * METHOD_IMPORT.
+ *
+ * Both directions stream through one fixed buffer, so memory stays the same however many rows
+ * there are.  Weather is written in its stored layout (see WeatherStorage) and in (location,
+ * date) order, so most fields are small integers or small deltas; those are written as
+ * variable length integers, which brings a row from about 90 bytes to about 20.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   header    int magic, int format version, int database version, long exported-at stamp
+ *   records   a tag byte each, then:
+ *             LOCATION   _id, setting, city name, double latitude, double longitude,
+ *                        fetched_at, source_version
+ *             CONDITION  _id, short description
+ *             WEATHER    location_id, date (delta), condition_id, weather_id, the scaled
+ *                        measurements, fetched_at (delta), source_version
+ *   trailer   the END tag, location, condition and weather counts, int CRC32 of every
+ *             byte before it
+ * </pre>
+ * Integers in records are zigzag varints, strings a varint length and UTF-8 bytes.  Deltas are
+ * to the previous weather record; the first one is to 0.
+ */
+final class WeatherArchive {
+
+    private static final int MAGIC = 0x53554e58; // "SUNX"
+    // Bump whenever the layout above changes; older archives are then refused.
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TAG_END = 0;
+    private static final byte TAG_LOCATION = 1;
+    private static final byte TAG_CONDITION = 2;
+    private static final byte TAG_WEATHER = 3;
+
+    // Big enough for any record, and for the channel to move data in useful amounts
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // No string the app stores comes near this; anything longer means a corrupt archive
+    private static final int MAX_STRING_BYTES = 4 * 1024;
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_FETCHED_AT,
+            LocationEntry.COLUMN_SOURCE_VERSION
+    };
+
+    private static final String[] CONDITION_COLUMNS = {
+            WeatherStorage.CONDITION_COLUMN_ID,
+            WeatherStorage.CONDITION_COLUMN_SHORT_DESC
+    };
+
+    // The stored columns of a weather row, in the order of the record
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherStorage.COLUMN_CONDITION_KEY,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_FETCHED_AT,
+            WeatherEntry.COLUMN_SOURCE_VERSION
+    };
+    private static final int WEATHER_DATE = 1;
+    private static final int WEATHER_CONDITION = 2;
+    private static final int WEATHER_FETCHED_AT = 10;
+
+    /**
+     * The row counts of one export or import.
+     */
+    static final class Counts {
+        long locations;
+        long conditions;
+        long weather;
+    }
+
+    private WeatherArchive() {
+    }
+
+    /**
+     * Writes every location and weather row to the channel, from its current position.
+     */
+    static Counts write(SQLiteDatabase db, FileChannel channel) throws IOException {
+        Output out = new Output(channel);
+        Counts counts = new Counts();
+        out.putInt(MAGIC);
+        out.putInt(FORMAT_VERSION);
+        out.putInt(db.getVersion());
+        out.putLong(System.currentTimeMillis());
+
+        // One transaction, so the tables are copied as of the same moment.  Writers wait.
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(LocationEntry.TABLE_NAME, LOCATION_COLUMNS,
+                    null, null, null, null, LocationEntry._ID);
+            try {
+                while (cursor.moveToNext()) {
+                    out.putByte(TAG_LOCATION);
+                    out.putVarLong(cursor.getLong(0));
+                    out.putString(cursor.getString(1));
+                    out.putString(cursor.getString(2));
+                    out.putDouble(cursor.getDouble(3));
+                    out.putDouble(cursor.getDouble(4));
+                    out.putVarLong(cursor.getLong(5));
+                    out.putVarLong(cursor.getLong(6));
+                    counts.locations++;
+                }
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.query(WeatherStorage.CONDITION_TABLE_NAME, CONDITION_COLUMNS,
+                    null, null, null, null, WeatherStorage.CONDITION_COLUMN_ID);
+            try {
+                while (cursor.moveToNext()) {
+                    out.putByte(TAG_CONDITION);
+                    out.putVarLong(cursor.getLong(0));
+                    out.putString(cursor.getString(1));
+                    counts.conditions++;
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // Walks the (location_id, date) index
+            cursor = db.query(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS, null, null, null, null,
+                    WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE);
+            try {
+                long previousDate = 0;
+                long previousFetchedAt = 0;
+                while (cursor.moveToNext()) {
+                    out.putByte(TAG_WEATHER);
+                    for (int i = 0; i < WEATHER_COLUMNS.length; i++) {
+                        long value = cursor.getLong(i);
+                        if (i == WEATHER_DATE) {
+                            out.putVarLong(value - previousDate);
+                            previousDate = value;
+                        } else if (i == WEATHER_FETCHED_AT) {
+                            out.putVarLong(value - previousFetchedAt);
+                            previousFetchedAt = value;
+                        } else {
+                            out.putVarLong(value);
+                        }
+                    }
+                    counts.weather++;
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        out.putByte(TAG_END);
+        out.putVarLong(counts.locations);
+        out.putVarLong(counts.conditions);
+        out.putVarLong(counts.weather);
+        out.finish();
+        return counts;
+    }
+
+    /**
+     * Replaces every location and weather row with the contents of the archive, in one
+     * transaction: if the archive turns out to be damaged, nothing is changed.  Descriptions
+     * are added to the dictionary rather than replacing it.
+     */
+    static Counts read(SQLiteDatabase db, FileChannel channel) throws IOException {
+        Input in = new Input(channel);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a weather archive");
+        }
+        int formatVersion = in.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported archive format " + formatVersion);
+        }
+        // The database version it came from, and when; only there for people reading the file
+        in.getInt();
+        in.getLong();
+
+        Counts counts = new Counts();
+        // Archive condition id to ours.  As small as the dictionary.
+        HashMap<Long, Long> conditionIds = new HashMap<Long, Long>();
+        HashMap<String, Long> descriptionIds = new HashMap<String, Long>();
+
+        SQLiteStatement insertLocation = db.compileStatement("INSERT INTO " +
+                LocationEntry.TABLE_NAME + " (" + join(LOCATION_COLUMNS) + ") VALUES (" +
+                placeholders(LOCATION_COLUMNS.length) + ")");
+        SQLiteStatement insertWeather = db.compileStatement("INSERT INTO " +
+                WeatherEntry.TABLE_NAME + " (" + join(WEATHER_COLUMNS) + ") VALUES (" +
+                placeholders(WEATHER_COLUMNS.length) + ")");
+        db.beginTransaction();
+        try {
+            db.delete(WeatherEntry.TABLE_NAME, null, null);
+            db.delete(LocationEntry.TABLE_NAME, null, null);
+
+            long previousDate = 0;
+            long previousFetchedAt = 0;
+            byte tag;
+            while ((tag = in.getByte()) != TAG_END) {
+                switch (tag) {
+                    case TAG_LOCATION:
+                        insertLocation.bindLong(1, in.getVarLong());
+                        insertLocation.bindString(2, in.getString());
+                        insertLocation.bindString(3, in.getString());
+                        insertLocation.bindDouble(4, in.getDouble());
+                        insertLocation.bindDouble(5, in.getDouble());
+                        insertLocation.bindLong(6, in.getVarLong());
+                        insertLocation.bindLong(7, in.getVarLong());
+                        insertLocation.executeInsert();
+                        counts.locations++;
+                        break;
+                    case TAG_CONDITION: {
+                        long archiveId = in.getVarLong();
+                        conditionIds.put(archiveId, WeatherStorage.getConditionId(
+                                db, in.getString(), descriptionIds));
+                        counts.conditions++;
+                        break;
+                    }
+                    case TAG_WEATHER:
+                        for (int i = 0; i < WEATHER_COLUMNS.length; i++) {
+                            long value = in.getVarLong();
+                            if (i == WEATHER_DATE) {
+                                value += previousDate;
+                                previousDate = value;
+                            } else if (i == WEATHER_FETCHED_AT) {
+                                value += previousFetchedAt;
+                                previousFetchedAt = value;
+                            } else if (i == WEATHER_CONDITION) {
+                                Long conditionId = conditionIds.get(value);
+                                if (null == conditionId) {
+                                    throw new IOException("Unknown condition " + value);
+                                }
+                                value = conditionId;
+                            }
+                            insertWeather.bindLong(i + 1, value);
+                        }
+                        if (insertWeather.executeInsert() == -1) {
+                            throw new IOException("Couldn't insert weather " + counts.weather);
+                        }
+                        counts.weather++;
+                        break;
+                    default:
+                        throw new IOException("Unknown record " + tag);
+                }
+            }
+
+            if (in.getVarLong() != counts.locations || in.getVarLong() != counts.conditions ||
+                    in.getVarLong() != counts.weather) {
+                throw new IOException("Truncated archive");
+            }
+            in.verifyChecksum();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertLocation.close();
+            insertWeather.close();
+        }
+        return counts;
+    }
+
+    private static String join(String[] columns) {
+        StringBuilder joined = new StringBuilder();
+        for (String column : columns) {
+            if (joined.length() > 0) joined.append(", ");
+            joined.append(column);
+        }
+        return joined.toString();
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.toString();
+    }
+
+    /*
+        Writes through the buffer, handing it to the channel whenever the next value might not
+        fit.  Every byte handed over goes through the checksum first.
+     */
+    private static final class Output {
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] mChunk = new byte[BUFFER_SIZE];
+        private final CRC32 mCrc = new CRC32();
+
+        Output(FileChannel channel) {
+            mChannel = channel;
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            mBuffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            mBuffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            mBuffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            mBuffer.putDouble(value);
+        }
+
+        // Zigzag, so small negative deltas stay small too
+        void putVarLong(long value) throws IOException {
+            ensure(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7fL) != 0) {
+                mBuffer.put((byte) ((zigzag & 0x7f) | 0x80));
+                zigzag >>>= 7;
+            }
+            mBuffer.put((byte) zigzag);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = utf8(value);
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IOException("String too long for the archive: " + value);
+            }
+            putVarLong(bytes.length);
+            ensure(bytes.length);
+            mBuffer.put(bytes);
+        }
+
+        // Writes out what is left, followed by the checksum of everything
+        void finish() throws IOException {
+            flush();
+            mBuffer.putInt((int) mCrc.getValue());
+            mBuffer.flip();
+            writeOut();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (mBuffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            mBuffer.flip();
+            int length = mBuffer.remaining();
+            mBuffer.get(mChunk, 0, length);
+            mCrc.update(mChunk, 0, length);
+            mBuffer.rewind();
+            writeOut();
+        }
+
+        // Hands the buffer, from its position to its limit, to the channel, then empties it
+        private void writeOut() throws IOException {
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+
+        private static byte[] utf8(String value) throws IOException {
+            try {
+                return value.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IOException(e.toString());
+            }
+        }
+    }
+
+    /*
+        Reads through the buffer, refilling it from the channel whenever the next value might
+        not be in it yet.  Every byte consumed goes through the checksum.
+     */
+    private static final class Input {
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] mChunk = new byte[BUFFER_SIZE];
+        private final CRC32 mCrc = new CRC32();
+        // Where in the buffer the bytes not yet checksummed start
+        private int mUnchecked;
+
+        Input(FileChannel channel) {
+            mChannel = channel;
+            mBuffer.limit(0);
+        }
+
+        byte getByte() throws IOException {
+            ensure(1);
+            return mBuffer.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return mBuffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return mBuffer.getLong();
+        }
+
+        double getDouble() throws IOException {
+            ensure(8);
+            return mBuffer.getDouble();
+        }
+
+        long getVarLong() throws IOException {
+            long zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 63) {
+                    throw new IOException("Malformed number");
+                }
+                byte b = getByte();
+                zigzag |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) break;
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String getString() throws IOException {
+            long length = getVarLong();
+            if (length < 0 || length > MAX_STRING_BYTES) {
+                throw new IOException("Malformed string of " + length + " bytes");
+            }
+            byte[] bytes = new byte[(int) length];
+            ensure(bytes.length);
+            mBuffer.get(bytes);
+            try {
+                return new String(bytes, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IOException(e.toString());
+            }
+        }
+
+        // Compares the checksum of everything read so far with the one that follows it
+        void verifyChecksum() throws IOException {
+            check();
+            ensure(4);
+            int expected = mBuffer.getInt();
+            mUnchecked = mBuffer.position();
+            if (expected != (int) mCrc.getValue()) {
+                throw new IOException("Checksum mismatch");
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (mBuffer.remaining() >= bytes) return;
+            check();
+            mBuffer.compact();
+            while (mBuffer.position() < bytes) {
+                if (mChannel.read(mBuffer) == -1) {
+                    throw new EOFException("Truncated archive");
+                }
+            }
+            mBuffer.flip();
+            mUnchecked = 0;
+        }
+
+        // Checksums what has been consumed since the last time
+        private void check() {
+            int consumed = mBuffer.position() - mUnchecked;
+            if (consumed <= 0) return;
+            ByteBuffer view = mBuffer.duplicate();
+            view.position(mUnchecked);
+            view.limit(mBuffer.position());
+            view.get(mChunk, 0, consumed);
+            mCrc.update(mChunk, 0, consumed);
+            mUnchecked = mBuffer.position();
+        }
+    }
+}
@@ -43,6 +43,45 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_PAGE = "page";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_METRICS = "metrics";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_NEAR = "near";
+
+    // ContentResolver.call() method returning the conditions of one day at a location as a
+    // Bundle: the location setting is the call's arg, and the day is EXTRA_DATE (today if it's
+    // missing).  The Bundle holds WeatherEntry.COLUMN_DATE, COLUMN_WEATHER_ID, COLUMN_MAX_TEMP,
+    // COLUMN_MIN_TEMP and COLUMN_SHORT_DESC, or is null if there is no such day.
+    // See CurrentConditions for a client that falls back to query() before Honeycomb.
+    public static final String METHOD_GET_CONDITIONS = "get_conditions";
+    public static final String EXTRA_DATE = "date";
+
+    // ContentResolver.call() method returning how fresh the weather of a location is: the
+    // location setting is the call's arg, and the Bundle holds LocationEntry.COLUMN_FETCHED_AT
+    // and COLUMN_SOURCE_VERSION, or is null if the location isn't known.  A single lookup on
+    // the location table, cheap enough to ask before every refresh.
+    // See Freshness for a client that falls back to query() before Honeycomb.
+    public static final String METHOD_GET_FRESHNESS = "get_freshness";
+
+    // ContentResolver.call() methods copying every location and weather row to, or replacing
+    // them with, a binary archive: the arg is the absolute path of the archive file.  The
+    // Bundle holds EXTRA_LOCATION_COUNT and EXTRA_WEATHER_COUNT.  An import is all or nothing;
+    // a damaged or foreign file fails with an IllegalArgumentException and changes nothing.
+    public static final String METHOD_EXPORT_ARCHIVE = "export_archive";
+    public static final String METHOD_IMPORT_ARCHIVE = "import_archive";
+    public static final String EXTRA_LOCATION_COUNT = "location_count";
+    public static final String EXTRA_WEATHER_COUNT = "weather_count";
+
+    // The version of the way the forecast is fetched and parsed, stored with every row it
+    // writes.  Increase it when that changes in a way that makes older rows worth refetching.
+    public static final int SOURCE_VERSION = 1;
+
+    // Query parameters of the paginated weather route
+    public static final String PARAM_AFTER = "after";
+    public static final String PARAM_LIMIT = "limit";
+    // Last day (inclusive) covered by the statistics route
+    public static final String PARAM_END_DATE = "end";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -81,9 +120,189 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // When the weather of this location was last fetched, in milliseconds since the epoch,
+        // and the SOURCE_VERSION that fetched it.  Kept up to date by the provider as weather
+        // rows are written; 0 for a location that has never had weather.
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+        public static final String COLUMN_SOURCE_VERSION = "source_version";
+
+        // Full text index over the location setting and city name, kept up to date by triggers
+        // on the location table.  Backs the search route.
+        public static final String FTS_TABLE_NAME = "location_fts";
+
+        // Spatial index over the coordinates, kept up to date by triggers on the location table.
+        // Only exists where SQLite was built with the rtree module; elsewhere INDEX_COORD does
+        // instead.  Backs the nearest-location route.
+        public static final String RTREE_TABLE_NAME = "location_rtree";
+        public static final String INDEX_COORD = "location_coord";
+
+        // Great-circle distance in kilometers from the point of a nearest-location query.
+        // Only in the rows of that route.
+        public static final String COLUMN_DISTANCE = "distance";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /*
+            Known locations whose setting or city name has a word starting with each word of
+            the query, best matches first.  "mou vi" finds "Mountain View".
+         */
+        public static Uri buildLocationSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+        }
+
+        public static Uri buildLocationSearchUri(String query, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query)
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static String getSearchQueryFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        /*
+            The known locations closest to a point, nearest first, each with its COLUMN_DISTANCE.
+            Lets a GPS fix be matched to a location we already have forecasts for, offline.
+         */
+        public static Uri buildLocationNearUri(double latitude, double longitude) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAR)
+                    .appendPath(Double.toString(latitude))
+                    .appendPath(Double.toString(longitude)).build();
+        }
+
+        public static Uri buildLocationNearUri(double latitude, double longitude, int limit) {
+            return buildLocationNearUri(latitude, longitude).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static double getLatitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getPathSegments().get(2));
+        }
+
+        public static double getLongitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getPathSegments().get(3));
+        }
+    }
+
+    /*
+        Inner class that defines the single row returned by "weather/{location}/stats".  The
+        values are computed by SQLite over the days in the requested range; there is no table
+        behind them.
+     */
+    public static final class StatsEntry {
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" +
+                        PATH_WEATHER + "/" + PATH_STATS;
+
+        // Number of days the statistics were computed over
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest minimum and highest maximum temperature of the period
+        public static final String COLUMN_MIN_TEMP = "min_temp";
+        public static final String COLUMN_MAX_TEMP = "max_temp";
+
+        // Averages of the daily minimum and maximum temperatures
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min_temp";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max_temp";
+
+        public static final String COLUMN_MIN_HUMIDITY = "min_humidity";
+        public static final String COLUMN_MAX_HUMIDITY = "max_humidity";
+        public static final String COLUMN_AVG_HUMIDITY = "avg_humidity";
+
+        public static final String COLUMN_MIN_WIND_SPEED = "min_wind";
+        public static final String COLUMN_MAX_WIND_SPEED = "max_wind";
+        public static final String COLUMN_AVG_WIND_SPEED = "avg_wind";
+    }
+
+    /*
+        Inner class that defines the rows of "metrics/provider": one per provider route and
+        operation that was called since the counters were last reset (by deleting the Uri).
+     */
+    public static final class MetricsEntry {
+
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_METRICS).appendPath("provider").build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS;
+
+        // The UriMatcher pattern of the route, e.g. "weather/*/#"
+        public static final String COLUMN_ROUTE = "route";
+        // query, insert, bulkInsert, update, delete or call
+        public static final String COLUMN_OPERATION = "operation";
+        public static final String COLUMN_COUNT = "count";
+        // Rows returned by queries, or written by the other operations
+        public static final String COLUMN_ROWS = "rows";
+        public static final String COLUMN_TOTAL_MICROS = "total_us";
+        public static final String COLUMN_MAX_MICROS = "max_us";
+
+        // Upper bounds (inclusive) of the latency histogram buckets.  There is one more bucket
+        // for everything slower than the last bound.
+        public static final long[] LATENCY_BUCKET_BOUNDS_MICROS = {
+                50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000
+        };
+
+        /**
+         * @return the name of the column holding the number of calls in the given latency
+         * bucket, e.g. "le_250us", or "gt_100000us" for the last one.
+         */
+        public static String getLatencyBucketColumn(int bucket) {
+            if (bucket < LATENCY_BUCKET_BOUNDS_MICROS.length) {
+                return "le_" + LATENCY_BUCKET_BOUNDS_MICROS[bucket] + "us";
+            }
+            return "gt_" + LATENCY_BUCKET_BOUNDS_MICROS[LATENCY_BUCKET_BOUNDS_MICROS.length - 1] + "us";
+        }
+    }
+
+    /*
+        Inner class that defines the rows of "metrics/frames": one per screen that drew a frame
+        while frame metrics were being collected, since they were last reset (by deleting the
+        Uri).  Collecting is turned on and off by updating the Uri with COLUMN_ENABLED.
+     */
+    public static final class FrameMetricsEntry {
+
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_METRICS).appendPath("frames").build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS;
+
+        // e.g. "forecast_list" or "detail"
+        public static final String COLUMN_SCREEN = "screen";
+        public static final String COLUMN_FRAMES = "frames";
+        // Frames that took longer than SLOW_FRAME_REFRESH_INTERVALS, and FROZEN_FRAME_MILLIS
+        public static final String COLUMN_SLOW_FRAMES = "slow";
+        public static final String COLUMN_FROZEN_FRAMES = "frozen";
+        // "position:count,..." of the adapter positions bound in slow frames
+        public static final String COLUMN_SLOW_BIND_POSITIONS = "slow_positions";
+        // "path:count,..." of the bind paths taken in slow frames
+        public static final String COLUMN_SLOW_BIND_PATHS = "slow_paths";
+        // Only for updates: whether to collect, as a boolean
+        public static final String COLUMN_ENABLED = "enabled";
+
+        // In refresh intervals of the display: a frame that took this long missed a vsync.
+        // Not exactly one interval, as the time between two frame callbacks jitters around it.
+        public static final float SLOW_FRAME_REFRESH_INTERVALS = 1.5f;
+        public static final long FROZEN_FRAME_MILLIS = 700;
+
+        // Upper bounds (inclusive) of the frame duration histogram buckets.  There is one more
+        // bucket for everything slower than the last bound.
+        public static final long[] FRAME_BUCKET_BOUNDS_MILLIS = {
+                8, 16, 24, 33, 50, 100, 250, 700
+        };
+
+        /**
+         * @return the name of the column holding the number of frames in the given duration
+         * bucket, e.g. "le_16ms", or "gt_700ms" for the last one.
+         */
+        public static String getFrameBucketColumn(int bucket) {
+            if (bucket < FRAME_BUCKET_BOUNDS_MILLIS.length) {
+                return "le_" + FRAME_BUCKET_BOUNDS_MILLIS[bucket] + "ms";
+            }
+            return "gt_" + FRAME_BUCKET_BOUNDS_MILLIS[FRAME_BUCKET_BOUNDS_MILLIS.length - 1] + "ms";
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -99,6 +318,9 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Index over (location_id, date), used for per-location date range scans
+        public static final String INDEX_LOCATION_DATE = "weather_location_date";
+
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
@@ -106,6 +328,9 @@ public class WeatherContract {
         // Weather id as returned by API, to identify the icon to be used
         public static final String COLUMN_WEATHER_ID = "weather_id";
 
+        // The short description and the measurements below are stored encoded, so
+        // selections on the weather routes can't name them; the provider refuses those.
+
         // Short description and long description of the weather, as provided by API.
         // e.g "clear" vs "sky is clear".
         public static final String COLUMN_SHORT_DESC = "short_desc";
@@ -126,6 +351,12 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // When this row was fetched, in milliseconds since the epoch, and the SOURCE_VERSION
+        // that fetched it.  The provider stamps the time of the insert if fetched_at is
+        // missing; rows from before database version 7 have 0 in both.
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+        public static final String COLUMN_SOURCE_VERSION = "source_version";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +380,51 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Builds the Uri of the first page of forecasts for a location, i.e. the first
+         * {@code limit} days starting at {@code startDate}, in ascending date order.
+         */
+        public static Uri buildWeatherLocationFirstPage(
+                String locationSetting, long startDate, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(PATH_PAGE)
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /**
+         * Builds the Uri of the page of forecasts that follows the one ending at
+         * {@code afterDate}: the next {@code limit} days strictly after it.
+         */
+        public static Uri buildWeatherLocationNextPage(
+                String locationSetting, long afterDate, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(PATH_PAGE)
+                    .appendQueryParameter(PARAM_AFTER, Long.toString(afterDate))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /**
+         * Builds the Uri of the statistics over the days from {@code startDate} to
+         * {@code endDate}, both inclusive, at a location.  See {@link StatsEntry}.
+         */
+        public static Uri buildWeatherLocationStats(
+                String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(PATH_STATS)
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        /**
+         * Builds the Uri of the forecasts from {@code startDate} to {@code endDate}, both
+         * inclusive, at a location.
+         */
+        public static Uri buildWeatherLocationWithDateRange(
+                String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Long.toString(normalizeDate(startDate)))
+                    .appendPath(Long.toString(normalizeDate(endDate))).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -157,6 +433,11 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        // For a date range Uri, getDateFromUri returns the first day of the range
+        public static long getRangeEndDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(3));
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -164,5 +445,29 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static int getPageLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
     }
 }
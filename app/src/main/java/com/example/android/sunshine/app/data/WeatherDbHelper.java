@@ -15,9 +15,14 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -27,13 +32,191 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
+    // If you change the database schema, you must increment the database version, and add a
+    // migration step for the new version to migrateTo below.
+    static final int DATABASE_VERSION = 7;
+
+    // The oldest schema we know how to migrate from.  Anything older is thrown away.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // The UNIQUE constraint on the weather table indexes (date, location_id).  Everything the
+    // app reads is "this location, from this date on", so index it the other way around as
+    // well; that way SQLite can walk one location's days in order and stop after a page.
+    // (Added in version 3)
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            WeatherEntry.INDEX_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    // Type of the fetched_at and source_version columns of both tables.  The default lets
+    // version 7 add them to existing rows.
+    private static final String SQL_FRESHNESS_COLUMN_TYPE = " INTEGER NOT NULL DEFAULT 0";
+
+    // The dictionary of short descriptions, see WeatherStorage.  (Added in version 4)
+    private static final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE " +
+            WeatherStorage.CONDITION_TABLE_NAME + " (" +
+            WeatherStorage.CONDITION_COLUMN_ID + " INTEGER PRIMARY KEY, " +
+            WeatherStorage.CONDITION_COLUMN_SHORT_DESC + " TEXT UNIQUE NOT NULL);";
+
+    // Since version 4, measurements are stored as integers in tenths and the description as a
+    // reference into the dictionary.  See WeatherStorage.
+    private static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+            // Why AutoIncrement here, and not above?
+            // Unique keys will be auto-generated in either case.  But for weather
+            // forecasting, it's reasonable to assume the user will want information
+            // for a certain date and all dates *following*, so the forecast data
+            // should be sorted accordingly.
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+            // the ID of the location entry associated with this weather data
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherStorage.COLUMN_CONDITION_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
+
+            WeatherEntry.COLUMN_HUMIDITY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " INTEGER NOT NULL, " +
+
+            // (Added in version 7)
+            WeatherEntry.COLUMN_FETCHED_AT + SQL_FRESHNESS_COLUMN_TYPE + ", " +
+            WeatherEntry.COLUMN_SOURCE_VERSION + SQL_FRESHNESS_COLUMN_TYPE + ", " +
+
+            // Set up the location column as a foreign key to location table.
+            " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            " FOREIGN KEY (" + WeatherStorage.COLUMN_CONDITION_KEY + ") REFERENCES " +
+            WeatherStorage.CONDITION_TABLE_NAME + " (" + WeatherStorage.CONDITION_COLUMN_ID + "), " +
+
+            // To assure the application have just one weather entry per day
+            // per location, it's created a UNIQUE constraint with REPLACE strategy
+            " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // Full text index of the locations, see LocationEntry.FTS_TABLE_NAME.  FTS3 rather than
+    // FTS4, which needs API 11.  Its docid is the location's _id.  (Added in version 5)
+    private static final String SQL_CREATE_LOCATION_FTS_TABLE = "CREATE VIRTUAL TABLE " +
+            LocationEntry.FTS_TABLE_NAME + " USING fts3(" +
+            LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME + ");";
+
+    // Only updates of the indexed columns reach the index; the provider stamps fetched_at on
+    // the location at every sync.  (Narrowed to those columns in version 7)
+    private static final String SQL_CREATE_LOCATION_FTS_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            LocationEntry.FTS_TABLE_NAME + "_update AFTER UPDATE OF " +
+            LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME +
+            " ON " + LocationEntry.TABLE_NAME + " BEGIN " + deleteLocationFts("old") + " " +
+            insertLocationFts("new") + " END;";
+
+    // Keep the index in step with every insert, update and delete on the location table
+    private static final String[] SQL_CREATE_LOCATION_FTS_TRIGGERS = {
+            "CREATE TRIGGER " + LocationEntry.FTS_TABLE_NAME + "_insert AFTER INSERT ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + insertLocationFts("new") + " END;",
+            SQL_CREATE_LOCATION_FTS_UPDATE_TRIGGER,
+            "CREATE TRIGGER " + LocationEntry.FTS_TABLE_NAME + "_delete AFTER DELETE ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + deleteLocationFts("old") + " END;"
+    };
+
+    private static String insertLocationFts(String row) {
+        return "INSERT INTO " + LocationEntry.FTS_TABLE_NAME + " (docid, " +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME +
+                ") VALUES (" + row + "." + LocationEntry._ID + ", " +
+                row + "." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                row + "." + LocationEntry.COLUMN_CITY_NAME + ");";
+    }
+
+    private static String deleteLocationFts(String row) {
+        return "DELETE FROM " + LocationEntry.FTS_TABLE_NAME + " WHERE docid = " +
+                row + "." + LocationEntry._ID + ";";
+    }
+
+    // Spatial index of the locations, see LocationEntry.RTREE_TABLE_NAME.  A location is stored
+    // as a box of no size at its coordinates; its id is the location's _id.  (Added in version 6)
+    private static final String SQL_CREATE_LOCATION_RTREE_TABLE = "CREATE VIRTUAL TABLE " +
+            LocationEntry.RTREE_TABLE_NAME + " USING rtree(id, " +
+            NearestLocations.RTREE_MIN_LAT + ", " + NearestLocations.RTREE_MAX_LAT + ", " +
+            NearestLocations.RTREE_MIN_LONG + ", " + NearestLocations.RTREE_MAX_LONG + ");";
+
+    // (Narrowed to the coordinates in version 7)
+    private static final String SQL_CREATE_LOCATION_RTREE_UPDATE_TRIGGER = "CREATE TRIGGER " +
+            LocationEntry.RTREE_TABLE_NAME + "_update AFTER UPDATE OF " +
+            LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG +
+            " ON " + LocationEntry.TABLE_NAME + " BEGIN " + deleteLocationRtree("old") + " " +
+            insertLocationRtree("new") + " END;";
+
+    private static final String[] SQL_CREATE_LOCATION_RTREE_TRIGGERS = {
+            "CREATE TRIGGER " + LocationEntry.RTREE_TABLE_NAME + "_insert AFTER INSERT ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + insertLocationRtree("new") + " END;",
+            SQL_CREATE_LOCATION_RTREE_UPDATE_TRIGGER,
+            "CREATE TRIGGER " + LocationEntry.RTREE_TABLE_NAME + "_delete AFTER DELETE ON " +
+                    LocationEntry.TABLE_NAME + " BEGIN " + deleteLocationRtree("old") + " END;"
+    };
+
+    // Without the rtree module: narrows the latitude band at least.  (Added in version 6)
+    private static final String SQL_CREATE_LOCATION_COORD_INDEX = "CREATE INDEX IF NOT EXISTS " +
+            LocationEntry.INDEX_COORD + " ON " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG + ");";
+
+    private static String insertLocationRtree(String row) {
+        String latitude = row + "." + LocationEntry.COLUMN_COORD_LAT;
+        String longitude = row + "." + LocationEntry.COLUMN_COORD_LONG;
+        return "INSERT INTO " + LocationEntry.RTREE_TABLE_NAME + " VALUES (" +
+                row + "." + LocationEntry._ID + ", " + latitude + ", " + latitude + ", " +
+                longitude + ", " + longitude + ");";
+    }
+
+    private static String deleteLocationRtree(String row) {
+        return "DELETE FROM " + LocationEntry.RTREE_TABLE_NAME + " WHERE id = " +
+                row + "." + LocationEntry._ID + ";";
+    }
+
+    private final DatabaseProfile mProfile;
+    // Set by onCreate, for onOpen to give the new file the profile's page size
+    private boolean mCreated;
+
     public WeatherDbHelper(Context context) {
+        this(context, DatabaseProfile.DEFAULT);
+    }
+
+    WeatherDbHelper(Context context, DatabaseProfile profile) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mProfile = profile;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // Saying so explicitly also keeps Pie's compatibility WAL off: the profile's page
+            // size and synchronous level are chosen for a rollback journal.
+            setWriteAheadLoggingEnabled(false);
+        }
+    }
+
+    /*
+        Sets the per-connection settings before anything else runs on the connection.  Only
+        called from Jelly Bean on; onOpen covers older releases.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        mProfile.apply(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            mProfile.apply(db);
+        }
+        // Outside onCreate's transaction, which VACUUM can't run in
+        if (mCreated) {
+            mCreated = false;
+            mProfile.applyPageSize(db);
+        }
     }
 
     @Override
@@ -45,54 +228,197 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_FETCHED_AT + SQL_FRESHNESS_COLUMN_TYPE + ", " +
+                LocationEntry.COLUMN_SOURCE_VERSION + SQL_FRESHNESS_COLUMN_TYPE +
                 " );";
 
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                // the ID of the location entry associated with this weather data
-                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
-
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
-
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
-
-                // Set up the location column as a foreign key to location table.
-                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
-
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
-
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_CONDITION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        createLocationSearch(sqLiteDatabase);
+        createLocationSpatialIndex(sqLiteDatabase);
+        mCreated = true;
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // Throwing the data away would make every user refetch at once the moment a release
+        // ships, and show an empty list until they have.  So the schema is moved forward one
+        // version at a time, keeping the rows.  SQLiteOpenHelper runs all of this inside one
+        // transaction: if a step fails, the database is left at oldVersion.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // This database is only a cache for online data, so for schemas that old we
+            // simply discard the data and start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherStorage.CONDITION_TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.FTS_TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.RTREE_TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateTo(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Upgrades the schema from {@code version - 1} to {@code version}.  Steps must only ever be
+     * added: a device may run any sequence of them, starting from any released version.
+     */
+    static void migrateTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 3:
+                db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            case 4:
+                migrateToEncodedWeather(db);
+                break;
+            case 5:
+                createLocationSearch(db);
+                // Index the locations we already have
+                db.execSQL("INSERT INTO " + LocationEntry.FTS_TABLE_NAME + " (docid, " +
+                        LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                        LocationEntry.COLUMN_CITY_NAME + ") SELECT " + LocationEntry._ID + ", " +
+                        LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                        LocationEntry.COLUMN_CITY_NAME + " FROM " + LocationEntry.TABLE_NAME);
+                break;
+            case 6:
+                createLocationSpatialIndex(db);
+                break;
+            case 7:
+                addFreshnessColumns(db);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    /*
+        Version 7: when, and by which SOURCE_VERSION, each weather row and each location was
+        fetched.  Existing rows get 0, i.e. "long ago".  The index triggers are recreated to
+        fire on their own columns only, or every fetched_at stamp would rewrite both indexes.
+     */
+    private static void addFreshnessColumns(SQLiteDatabase db) {
+        for (String table : new String[]{WeatherEntry.TABLE_NAME, LocationEntry.TABLE_NAME}) {
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " +
+                    WeatherEntry.COLUMN_FETCHED_AT + SQL_FRESHNESS_COLUMN_TYPE);
+            db.execSQL("ALTER TABLE " + table + " ADD COLUMN " +
+                    WeatherEntry.COLUMN_SOURCE_VERSION + SQL_FRESHNESS_COLUMN_TYPE);
+        }
+        db.execSQL("DROP TRIGGER IF EXISTS " + LocationEntry.FTS_TABLE_NAME + "_update");
+        db.execSQL(SQL_CREATE_LOCATION_FTS_UPDATE_TRIGGER);
+        // Only there if version 6 found the rtree module
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'trigger' " +
+                "AND name = ?", new String[]{LocationEntry.RTREE_TABLE_NAME + "_update"});
+        try {
+            if (cursor.moveToFirst()) {
+                db.execSQL("DROP TRIGGER " + LocationEntry.RTREE_TABLE_NAME + "_update");
+                db.execSQL(SQL_CREATE_LOCATION_RTREE_UPDATE_TRIGGER);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void createLocationSearch(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_LOCATION_FTS_TABLE);
+        for (String trigger : SQL_CREATE_LOCATION_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    /*
+        The rtree module is an optional part of SQLite, and not every device's build has it.
+        Where it's missing, fall back to a plain index over the coordinates; NearestLocations
+        checks which one it got.
+     */
+    private static void createLocationSpatialIndex(SQLiteDatabase db) {
+        try {
+            db.execSQL(SQL_CREATE_LOCATION_RTREE_TABLE);
+        } catch (SQLiteException e) {
+            Log.i(LOG_TAG, "No rtree module in this SQLite, indexing coordinates instead");
+            db.execSQL(SQL_CREATE_LOCATION_COORD_INDEX);
+            return;
+        }
+        for (String trigger : SQL_CREATE_LOCATION_RTREE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+        // Index the locations we already have
+        db.execSQL("INSERT INTO " + LocationEntry.RTREE_TABLE_NAME + " SELECT " +
+                LocationEntry._ID + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + ", " + LocationEntry.COLUMN_COORD_LONG +
+                " FROM " + LocationEntry.TABLE_NAME);
+    }
+
+    /*
+        Version 4: REAL measurements become integers in tenths, and short_desc moves into the
+        weather_condition dictionary.  SQLite can't change column types in place, so the
+        table is copied.
+
+        The weather table and its scaled columns are spelled out as they were in version 4, not
+        taken from the current schema: a database being upgraded from version 3 goes through
+        the later steps too, which add their own columns.
+     */
+    private static final String SQL_CREATE_WEATHER_TABLE_V4 = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "condition_id INTEGER NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min INTEGER NOT NULL, " +
+            "max INTEGER NOT NULL, " +
+            "humidity INTEGER NOT NULL, " +
+            "pressure INTEGER NOT NULL, " +
+            "wind INTEGER NOT NULL, " +
+            "degrees INTEGER NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " FOREIGN KEY (condition_id) REFERENCES weather_condition (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    private static final String[] SCALED_COLUMNS_V4 = {
+            "min", "max", "humidity", "pressure", "wind", "degrees"
+    };
+
+    private static void migrateToEncodedWeather(SQLiteDatabase db) {
+        final String oldTable = WeatherEntry.TABLE_NAME + "_v3";
+        db.execSQL(SQL_CREATE_CONDITION_TABLE);
+        db.execSQL("INSERT INTO " + WeatherStorage.CONDITION_TABLE_NAME + " (" +
+                WeatherStorage.CONDITION_COLUMN_SHORT_DESC + ") SELECT DISTINCT " +
+                WeatherEntry.COLUMN_SHORT_DESC + " FROM " + WeatherEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME + " RENAME TO " + oldTable);
+        db.execSQL(SQL_CREATE_WEATHER_TABLE_V4);
+
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        columns.append(WeatherEntry._ID).append(", ")
+                .append(WeatherEntry.COLUMN_LOC_KEY).append(", ")
+                .append(WeatherEntry.COLUMN_DATE).append(", ")
+                .append(WeatherEntry.COLUMN_WEATHER_ID).append(", ")
+                .append(WeatherStorage.COLUMN_CONDITION_KEY);
+        values.append("w.").append(WeatherEntry._ID).append(", ")
+                .append("w.").append(WeatherEntry.COLUMN_LOC_KEY).append(", ")
+                .append("w.").append(WeatherEntry.COLUMN_DATE).append(", ")
+                .append("w.").append(WeatherEntry.COLUMN_WEATHER_ID).append(", ")
+                .append("c.").append(WeatherStorage.CONDITION_COLUMN_ID);
+        for (String column : SCALED_COLUMNS_V4) {
+            columns.append(", ").append(column);
+            values.append(", CAST(ROUND(w.").append(column).append(" * ")
+                    .append(WeatherStorage.SCALE).append(") AS INTEGER)");
+        }
+        db.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" + columns + ") SELECT " +
+                values + " FROM " + oldTable + " w INNER JOIN " +
+                WeatherStorage.CONDITION_TABLE_NAME + " c ON c." +
+                WeatherStorage.CONDITION_COLUMN_SHORT_DESC + " = w." +
+                WeatherEntry.COLUMN_SHORT_DESC);
+
+        // Takes the old (location_id, date) index with it, so recreate that afterwards
+        db.execSQL("DROP TABLE " + oldTable);
+        db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 }
@@ -17,23 +17,63 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private ForecastCache mForecastCache;
+    private NearestLocations mNearestLocations;
+    private ProviderMetrics mMetrics;
+    // Change notifications collected by the applyBatch running on the current thread, if any
+    private final ThreadLocal<PendingChanges> mBatchChanges = new ThreadLocal<PendingChanges>();
+
+    // Past this many distinct (location, date) pairs an update or delete just notifies the
+    // whole weather URI.
+    private static final int MAX_SCOPED_CHANGES = 64;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_WITH_LOCATION_PAGE = 103;
+    static final int WEATHER_WITH_LOCATION_STATS = 104;
+    static final int WEATHER_WITH_LOCATION_AND_DATE_RANGE = 105;
     static final int LOCATION = 300;
+    static final int LOCATION_SEARCH = 301;
+    static final int LOCATION_NEAR = 302;
+    static final int METRICS = 400;
+    static final int METRICS_FRAMES = 401;
+
+    // The routes whose calls are measured, and how they are named in "metrics/provider"
+    private static final int[] METERED_ROUTES = {
+            WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
+            WEATHER_WITH_LOCATION_PAGE, WEATHER_WITH_LOCATION_STATS,
+            WEATHER_WITH_LOCATION_AND_DATE_RANGE, LOCATION, LOCATION_SEARCH,
+            LOCATION_NEAR
+    };
+    private static final String[] METERED_ROUTE_NAMES = {
+            "weather", "weather/*", "weather/*/#",
+            "weather/*/page", "weather/*/stats",
+            "weather/*/#/#", "location", "location/search/*",
+            "location/near/*/*"
+    };
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -49,6 +89,94 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+        // Reads the stored layout back as the contract's columns, see WeatherStorage
+        sWeatherByLocationSettingQueryBuilder.setProjectionMap(
+                WeatherStorage.buildJoinedProjectionMap());
+    }
+
+    private static final SQLiteQueryBuilder sWeatherQueryBuilder;
+
+    static{
+        sWeatherQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherQueryBuilder.setTables(WeatherContract.WeatherEntry.TABLE_NAME);
+        sWeatherQueryBuilder.setProjectionMap(WeatherStorage.buildWeatherProjectionMap());
+    }
+
+    private static final SQLiteQueryBuilder sWeatherStatsByLocationSettingQueryBuilder;
+
+    static{
+        // Same join as above, but every column is an aggregate over the matching days, so the
+        // query always comes back as a single row.
+        sWeatherStatsByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherStatsByLocationSettingQueryBuilder.setTables(
+                sWeatherByLocationSettingQueryBuilder.getTables());
+
+        HashMap<String, String> statsColumns = new HashMap<String, String>();
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_DAY_COUNT, "COUNT(*)");
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_MIN_TEMP,
+                aggregate("MIN", WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_MAX_TEMP,
+                aggregate("MAX", WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_AVG_MIN_TEMP,
+                aggregate("AVG", WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_AVG_MAX_TEMP,
+                aggregate("AVG", WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_MIN_HUMIDITY,
+                aggregate("MIN", WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_MAX_HUMIDITY,
+                aggregate("MAX", WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_AVG_HUMIDITY,
+                aggregate("AVG", WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_MIN_WIND_SPEED,
+                aggregate("MIN", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_MAX_WIND_SPEED,
+                aggregate("MAX", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED));
+        putAggregate(statsColumns, WeatherContract.StatsEntry.COLUMN_AVG_WIND_SPEED,
+                aggregate("AVG", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED));
+        sWeatherStatsByLocationSettingQueryBuilder.setProjectionMap(statsColumns);
+    }
+
+    private static final String[] sLocationColumns = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_FETCHED_AT,
+            WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION
+    };
+
+    private static final SQLiteQueryBuilder sLocationSearchQueryBuilder;
+
+    static{
+        //location_fts INNER JOIN location ON location._id = location_fts.docid
+        sLocationSearchQueryBuilder = new SQLiteQueryBuilder();
+        sLocationSearchQueryBuilder.setTables(
+                WeatherContract.LocationEntry.FTS_TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID +
+                        " = " + WeatherContract.LocationEntry.FTS_TABLE_NAME + ".docid");
+
+        // The index has columns named like the location's, so every column is read from the
+        // location table explicitly.
+        HashMap<String, String> locationColumns = new HashMap<String, String>();
+        for (String column : sLocationColumns) {
+            String qualified = WeatherContract.LocationEntry.TABLE_NAME + "." + column;
+            locationColumns.put(column, qualified);
+            locationColumns.put(qualified, qualified);
+        }
+        sLocationSearchQueryBuilder.setProjectionMap(locationColumns);
+    }
+
+    private static void putAggregate(HashMap<String, String> columns, String name, String sql) {
+        columns.put(name, sql + " AS " + name);
+    }
+
+    // Aggregates the stored (scaled) column, and scales only the result back
+    private static String aggregate(String function, String column) {
+        return WeatherStorage.decode(function + "(" + WeatherContract.WeatherEntry.TABLE_NAME +
+                "." + column + ")");
     }
 
     //location.location_setting = ?
@@ -72,6 +200,12 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
+        if (startDate != 0) {
+            Cursor cached = mForecastCache.queryFrom(mOpenHelper.getReadableDatabase(),
+                    locationSetting, startDate, projection, sortOrder, today());
+            if (null != cached) return cached;
+        }
+
         String[] selectionArgs;
         String selection;
 
@@ -93,10 +227,123 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
+    //location.location_setting = ? AND date > ?
+    private static final String sLocationSettingAfterDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
+    // Pages are keyed on the date, so they always have to come back in date order
+    private static final String sPageSortOrder =
+            WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /*
+        Keyset pagination: rather than OFFSET, each page starts strictly after the last date of
+        the previous one, so every page is a short range scan of the (location_id, date) index.
+     */
+    private Cursor getWeatherPageByLocationSetting(Uri uri, String[] projection) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        int limit = WeatherContract.WeatherEntry.getPageLimitFromUri(uri);
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            limit = MAX_PAGE_SIZE;
+        }
+
+        String selection;
+        String[] selectionArgs;
+        if (afterDate != 0) {
+            selection = sLocationSettingAfterDateSelection;
+            selectionArgs = new String[]{locationSetting, Long.toString(afterDate)};
+        } else if (startDate != 0) {
+            selection = sLocationSettingWithStartDateSelection;
+            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
+        } else {
+            selection = sLocationSettingSelection;
+            selectionArgs = new String[]{locationSetting};
+        }
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sPageSortOrder,
+                Integer.toString(limit)
+        );
+    }
+
+    //location.location_setting = ? AND weather.date >= ? AND weather.date <= ?
+    private static final String sLocationSettingBetweenDatesSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    private Cursor getWeatherByLocationSettingAndDateRange(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        long startDate = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        long endDate = WeatherContract.WeatherEntry.getRangeEndDateFromUri(uri);
+
+        Cursor cached = mForecastCache.queryRange(mOpenHelper.getReadableDatabase(),
+                locationSetting, startDate, endDate, projection, sortOrder, today());
+        if (null != cached) return cached;
+
+        // A range scan of the (location_id, date) index
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingBetweenDatesSelection,
+                new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    /*
+        The aggregates are computed by SQLite while it walks the (location_id, date) index range,
+        so the caller gets one row instead of every day of the period.  A missing start or end
+        date leaves that side of the range open.
+     */
+    private Cursor getWeatherStatsByLocationSetting(Uri uri, String[] projection) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long endDate = WeatherContract.WeatherEntry.getEndDateFromUri(uri);
+        if (endDate == 0) {
+            endDate = Long.MAX_VALUE;
+        }
+
+        return sWeatherStatsByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingBetweenDatesSelection,
+                new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)},
+                null,
+                null,
+                null
+        );
+    }
+
+    private Cursor getWeatherByLocationSettingAndDate(
+            Uri uri, String[] projection, String sortOrder) {
+        return getWeatherByLocationSettingAndDate(
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                WeatherContract.WeatherEntry.getDateFromUri(uri),
+                projection,
+                sortOrder);
+    }
+
+    private Cursor getWeatherByLocationSettingAndDate(
+            String locationSetting, long date, String[] projection, String sortOrder) {
+        Cursor cached = mForecastCache.queryDay(mOpenHelper.getReadableDatabase(),
+                locationSetting, date, projection, today());
+        if (null != cached) return cached;
 
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
@@ -108,6 +355,239 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    //location_fts MATCH ?
+    private static final String sLocationSearchSelection =
+            WeatherContract.LocationEntry.FTS_TABLE_NAME + " MATCH ? ";
+
+    // Cities whose name starts with the first word typed come first, then shorter names
+    private static final String sLocationSearchSortOrder =
+            "CASE WHEN " + WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME + " LIKE ? THEN 0 ELSE 1 END, " +
+                    "length(" + WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME + "), " +
+                    WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME;
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    /*
+        The full text index finds every location with a word starting with each typed word
+        without looking at the others, so this stays fast however many locations are stored.
+     */
+    private Cursor searchLocations(Uri uri, String[] projection) {
+        String[] words = getSearchWords(WeatherContract.LocationEntry.getSearchQueryFromUri(uri));
+        int limit = WeatherContract.WeatherEntry.getPageLimitFromUri(uri);
+        if (limit <= 0) {
+            limit = DEFAULT_SEARCH_LIMIT;
+        } else if (limit > MAX_PAGE_SIZE) {
+            limit = MAX_PAGE_SIZE;
+        }
+        if (null == projection) {
+            projection = sLocationColumns;
+        }
+
+        if (words.length == 0) {
+            // Nothing searchable was typed; no location matches
+            return sLocationSearchQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                    projection, "0", null, null, null, null);
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : words) {
+            if (match.length() > 0) match.append(' ');
+            match.append(word).append('*');
+        }
+        return sLocationSearchQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSearchSelection,
+                new String[]{match.toString(), words[0] + "%"},
+                null,
+                null,
+                sLocationSearchSortOrder,
+                Integer.toString(limit)
+        );
+    }
+
+    /*
+        Splits a search into words the way the FTS tokenizer does: anything that isn't a letter
+        or digit separates words.  That also drops quotes, '*', '-' and the like, which FTS
+        would otherwise read as operators.  Lower case keeps "or" and "and" from being read as
+        operators too.
+     */
+    static String[] getSearchWords(String query) {
+        ArrayList<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static final int DEFAULT_NEAR_LIMIT = 10;
+
+    private Cursor getLocationsNear(Uri uri, String[] projection) {
+        int limit = WeatherContract.WeatherEntry.getPageLimitFromUri(uri);
+        if (limit <= 0) {
+            limit = DEFAULT_NEAR_LIMIT;
+        } else if (limit > MAX_PAGE_SIZE) {
+            limit = MAX_PAGE_SIZE;
+        }
+        return mNearestLocations.query(mOpenHelper.getReadableDatabase(),
+                WeatherContract.LocationEntry.getLatitudeFromUri(uri),
+                WeatherContract.LocationEntry.getLongitudeFromUri(uri),
+                limit,
+                projection);
+    }
+
+    private static final String[] sConditionsProjection = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    /*
+        The conditions of one day as a small Bundle, for callers that only want a few values and
+        would otherwise pay for a Cursor (and, across processes, a CursorWindow) to get them.
+        See WeatherContract.METHOD_GET_CONDITIONS.
+     */
+    private Bundle getConditions(String locationSetting, long date) {
+        Cursor cursor = getWeatherByLocationSettingAndDate(
+                locationSetting, WeatherContract.normalizeDate(date), sConditionsProjection, null);
+        try {
+            if (!cursor.moveToFirst()) return null;
+            Bundle conditions = new Bundle();
+            conditions.putLong(WeatherContract.WeatherEntry.COLUMN_DATE, cursor.getLong(0));
+            conditions.putInt(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, cursor.getInt(1));
+            conditions.putDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, cursor.getDouble(2));
+            conditions.putDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, cursor.getDouble(3));
+            conditions.putString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, cursor.getString(4));
+            return conditions;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static final String[] sFreshnessProjection = {
+            WeatherContract.LocationEntry.COLUMN_FETCHED_AT,
+            WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION
+    };
+
+    /*
+        When a location's weather was last fetched, read off the location row, which the writes
+        below keep up to date.  See WeatherContract.METHOD_GET_FRESHNESS.
+     */
+    private Bundle getFreshness(String locationSetting) {
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                sFreshnessProjection,
+                sLocationSettingSelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            if (!cursor.moveToFirst()) return null;
+            Bundle freshness = new Bundle();
+            freshness.putLong(WeatherContract.LocationEntry.COLUMN_FETCHED_AT, cursor.getLong(0));
+            freshness.putInt(WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION, cursor.getInt(1));
+            return freshness;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Weather that doesn't say when it was fetched was fetched just now
+    private static void stampFetchedAt(ContentValues values) {
+        if (!values.containsKey(WeatherContract.WeatherEntry.COLUMN_FETCHED_AT)) {
+            values.put(WeatherContract.WeatherEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+        }
+    }
+
+    //_id = ? AND fetched_at < ?
+    private static final String sLocationOlderThanSelection =
+            WeatherContract.LocationEntry._ID + " = ? AND " +
+                    WeatherContract.LocationEntry.COLUMN_FETCHED_AT + " < ? ";
+
+    /*
+        Carries the freshness of a weather row over to its location, unless the location already
+        has newer weather.  The other rows of the same sync then only cost a primary key lookup.
+        No change is announced for it: freshness is asked for, not observed.
+     */
+    private static void stampLocation(SQLiteDatabase db, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long fetchedAt = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_FETCHED_AT);
+        if (null == locationId || null == fetchedAt) return;
+        Integer sourceVersion =
+                values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_SOURCE_VERSION);
+
+        ContentValues freshness = new ContentValues();
+        freshness.put(WeatherContract.LocationEntry.COLUMN_FETCHED_AT, fetchedAt);
+        freshness.put(WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION,
+                null == sourceVersion ? 0 : sourceVersion);
+        db.update(WeatherContract.LocationEntry.TABLE_NAME, freshness, sLocationOlderThanSelection,
+                new String[]{Long.toString(locationId), Long.toString(fetchedAt)});
+    }
+
+    /*
+        Streams the tables to or from an archive file, see WeatherArchive.  After an import
+        nothing cached is valid any more, and every observer has something new to see.
+     */
+    private Bundle transferArchive(String method, String path) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final boolean export = WeatherContract.METHOD_EXPORT_ARCHIVE.equals(method);
+        WeatherArchive.Counts counts;
+        try {
+            if (export) {
+                FileOutputStream out = new FileOutputStream(path);
+                try {
+                    counts = WeatherArchive.write(db, out.getChannel());
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+            } else {
+                final PendingChanges changes = beginChanges();
+                FileInputStream in = new FileInputStream(path);
+                try {
+                    counts = WeatherArchive.read(db, in.getChannel());
+                } finally {
+                    in.close();
+                    mForecastCache.invalidate();
+                }
+                ForecastSnapshot.invalidate(getContext());
+                changes.locationsChanged();
+                changes.allWeatherChanged();
+                endChanges(changes);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                    (export ? "Can't export to " : "Can't import from ") + path + ": " +
+                            e.getMessage());
+        }
+        Bundle result = new Bundle();
+        result.putLong(WeatherContract.EXTRA_LOCATION_COUNT, counts.locations);
+        result.putLong(WeatherContract.EXTRA_WEATHER_COUNT, counts.weather);
+        return result;
+    }
+
+    // Behind a projection map, a null projection would select every key of the map, bare and
+    // qualified names alike.  Spell out what "all columns" used to mean instead.
+    private static String[] joinedProjection(String[] projection) {
+        return null == projection ? WeatherStorage.ALL_JOINED_COLUMNS : projection;
+    }
+
+    // The cache works in normalized days, just like the dates stored in the database.
+    private static long today() {
+        return WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -128,8 +608,21 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#/#",
+                WEATHER_WITH_LOCATION_AND_DATE_RANGE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/" + WeatherContract.PATH_PAGE,
+                WEATHER_WITH_LOCATION_PAGE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/" + WeatherContract.PATH_STATS,
+                WEATHER_WITH_LOCATION_STATS);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_SEARCH + "/*", LOCATION_SEARCH);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_NEAR + "/*/*", LOCATION_NEAR);
+
+        matcher.addURI(authority, WeatherContract.PATH_METRICS + "/provider", METRICS);
+        matcher.addURI(authority, WeatherContract.PATH_METRICS + "/frames", METRICS_FRAMES);
         return matcher;
     }
 
@@ -140,6 +633,9 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mForecastCache = new ForecastCache(sWeatherByLocationSettingQueryBuilder);
+        mNearestLocations = new NearestLocations();
+        mMetrics = new ProviderMetrics(METERED_ROUTES, METERED_ROUTE_NAMES);
         return true;
     }
 
@@ -160,38 +656,222 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_WITH_LOCATION_AND_DATE_RANGE:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_WITH_LOCATION_PAGE:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_WITH_LOCATION_STATS:
+                return WeatherContract.StatsEntry.CONTENT_ITEM_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_SEARCH:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_NEAR:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case METRICS:
+                return WeatherContract.MetricsEntry.CONTENT_TYPE;
+            case METRICS_FRAMES:
+                return WeatherContract.FrameMetricsEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
     }
 
+    /*
+        Every operation is measured per route by a thin wrapper around the method that does the
+        work.  The metrics routes themselves are answered (or reset) here, unmeasured.
+     */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final int match = sUriMatcher.match(uri);
+        if (match == METRICS) {
+            Cursor metrics = mMetrics.toCursor();
+            metrics.setNotificationUri(getContext().getContentResolver(), uri);
+            return metrics;
+        }
+        if (match == METRICS_FRAMES) {
+            Cursor metrics = FrameMetrics.toCursor();
+            metrics.setNotificationUri(getContext().getContentResolver(), uri);
+            return metrics;
+        }
+        final long start = System.nanoTime();
+        int rows = 0;
+        try {
+            Cursor cursor = queryRoute(uri, projection, selection, selectionArgs, sortOrder);
+            // Fills the cursor window here rather than in the caller, so the latency includes
+            // actually running the query.
+            rows = cursor.getCount();
+            return cursor;
+        } finally {
+            mMetrics.record(match, ProviderMetrics.QUERY, rows, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        final long start = System.nanoTime();
+        int rows = 0;
+        try {
+            Uri returnUri = insertRoute(uri, values);
+            rows = 1;
+            return returnUri;
+        } finally {
+            mMetrics.record(sUriMatcher.match(uri), ProviderMetrics.INSERT, rows,
+                    System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        final int match = sUriMatcher.match(uri);
+        if (match == METRICS) {
+            mMetrics.reset();
+            return 0;
+        }
+        if (match == METRICS_FRAMES) {
+            FrameMetrics.reset();
+            return 0;
+        }
+        final long start = System.nanoTime();
+        int rows = 0;
+        try {
+            rows = deleteRoute(uri, selection, selectionArgs);
+            return rows;
+        } finally {
+            mMetrics.record(match, ProviderMetrics.DELETE, rows, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int update(
+            Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        if (sUriMatcher.match(uri) == METRICS_FRAMES) {
+            Boolean enabled = values.getAsBoolean(WeatherContract.FrameMetricsEntry.COLUMN_ENABLED);
+            if (null == enabled) {
+                throw new IllegalArgumentException("Only " +
+                        WeatherContract.FrameMetricsEntry.COLUMN_ENABLED + " can be updated: " + uri);
+            }
+            FrameMetrics.setEnabled(getContext(), enabled);
+            return 1;
+        }
+        final long start = System.nanoTime();
+        int rows = 0;
+        try {
+            rows = updateRoute(uri, values, selection, selectionArgs);
+            return rows;
+        } finally {
+            mMetrics.record(sUriMatcher.match(uri), ProviderMetrics.UPDATE, rows,
+                    System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final long start = System.nanoTime();
+        int rows = 0;
+        try {
+            rows = bulkInsertRoute(uri, values);
+            return rows;
+        } finally {
+            mMetrics.record(sUriMatcher.match(uri), ProviderMetrics.BULK_INSERT, rows,
+                    System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_GET_CONDITIONS.equals(method)) {
+            final long start = System.nanoTime();
+            Bundle conditions = null;
+            try {
+                long date = null == extras ? System.currentTimeMillis() :
+                        extras.getLong(WeatherContract.EXTRA_DATE, System.currentTimeMillis());
+                conditions = getConditions(arg, date);
+                return conditions;
+            } finally {
+                mMetrics.record(WEATHER_WITH_LOCATION_AND_DATE, ProviderMetrics.CALL,
+                        null == conditions ? 0 : 1, System.nanoTime() - start);
+            }
+        }
+        if (WeatherContract.METHOD_GET_FRESHNESS.equals(method)) {
+            final long start = System.nanoTime();
+            Bundle freshness = null;
+            try {
+                freshness = getFreshness(arg);
+                return freshness;
+            } finally {
+                mMetrics.record(LOCATION, ProviderMetrics.CALL,
+                        null == freshness ? 0 : 1, System.nanoTime() - start);
+            }
+        }
+        if (WeatherContract.METHOD_EXPORT_ARCHIVE.equals(method) ||
+                WeatherContract.METHOD_IMPORT_ARCHIVE.equals(method)) {
+            final long start = System.nanoTime();
+            Bundle result = null;
+            try {
+                result = transferArchive(method, arg);
+                return result;
+            } finally {
+                mMetrics.record(WEATHER, ProviderMetrics.CALL, null == result ? 0 :
+                                (int) result.getLong(WeatherContract.EXTRA_WEATHER_COUNT),
+                        System.nanoTime() - start);
+            }
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private Cursor queryRoute(Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
+        Uri notificationUri = uri;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                retCursor = getWeatherByLocationSettingAndDate(
+                        uri, joinedProjection(projection), sortOrder);
+                break;
+            }
+            // "weather/*/*/*"
+            case WEATHER_WITH_LOCATION_AND_DATE_RANGE: {
+                retCursor = getWeatherByLocationSettingAndDateRange(
+                        uri, joinedProjection(projection), sortOrder);
+                // Changes are announced per location or per day, never per range
+                notificationUri = WeatherContract.WeatherEntry.buildWeatherLocation(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                break;
+            }
+            // "weather/*/page"
+            case WEATHER_WITH_LOCATION_PAGE: {
+                retCursor = getWeatherPageByLocationSetting(uri, joinedProjection(projection));
+                // Changes are announced per location or per day, never per page
+                notificationUri = WeatherContract.WeatherEntry.buildWeatherLocation(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                break;
+            }
+            // "weather/*/stats"
+            case WEATHER_WITH_LOCATION_STATS: {
+                retCursor = getWeatherStatsByLocationSetting(uri, projection);
+                notificationUri = WeatherContract.WeatherEntry.buildWeatherLocation(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                retCursor = getWeatherByLocationSetting(
+                        uri, joinedProjection(projection), sortOrder);
                 break;
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
+                WeatherStorage.checkSelection(selection);
+                retCursor = sWeatherQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                        null == projection ? WeatherStorage.ALL_WEATHER_COLUMNS : projection,
                         selection,
                         selectionArgs,
                         null,
@@ -213,31 +893,45 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/search/*"
+            case LOCATION_SEARCH: {
+                retCursor = searchLocations(uri, projection);
+                break;
+            }
+            // "location/near/*/*"
+            case LOCATION_NEAR: {
+                retCursor = getLocationsNear(uri, projection);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return retCursor;
     }
 
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
-    @Override
-    public Uri insert(Uri uri, ContentValues values) {
+    private Uri insertRoute(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final PendingChanges changes = beginChanges();
         Uri returnUri;
 
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                stampFetchedAt(values);
+                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                        WeatherStorage.encode(db, values, null));
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                stampLocation(db, values);
+                recordInsertedWeather(changes, values);
                 break;
             }
             case LOCATION: {
@@ -246,37 +940,46 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.locationsChanged();
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        mForecastCache.invalidate();
+        endChanges(changes);
         return returnUri;
     }
 
-    @Override
-    public int delete(Uri uri, String selection, String[] selectionArgs) {
+    private int deleteRoute(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final PendingChanges changes = beginChanges();
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
+                WeatherStorage.checkSelection(selection);
+                recordAffectedWeather(db, changes, selection, selectionArgs);
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                changes.locationsChanged();
+                changes.allWeatherChanged();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mForecastCache.invalidate();
+            endChanges(changes);
+        } else {
+            discardChanges(changes);
         }
         return rowsDeleted;
     }
@@ -289,59 +992,180 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
-    @Override
-    public int update(
+    private int updateRoute(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final PendingChanges changes = beginChanges();
         int rowsUpdated;
 
         switch (match) {
             case WEATHER:
+                WeatherStorage.checkSelection(selection);
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE) ||
+                        values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                    // Rows are moving to another day or location; we can't scope that cheaply.
+                    changes.allWeatherChanged();
+                } else {
+                    recordAffectedWeather(db, changes, selection, selectionArgs);
+                }
+                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME,
+                        WeatherStorage.encode(db, values, null), selection, selectionArgs);
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                // Location columns are part of every joined weather row
+                changes.locationsChanged();
+                changes.allWeatherChanged();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mForecastCache.invalidate();
+            endChanges(changes);
+        } else {
+            discardChanges(changes);
         }
         return rowsUpdated;
     }
 
-    @Override
-    public int bulkInsert(Uri uri, ContentValues[] values) {
+    private int bulkInsertRoute(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                final PendingChanges changes = beginChanges();
                 db.beginTransaction();
                 int returnCount = 0;
+                // A sync brings in a handful of distinct descriptions for 14 days
+                HashMap<String, Long> conditionIds = new HashMap<String, Long>();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        stampFetchedAt(value);
+                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                                WeatherStorage.encode(db, value, conditionIds));
                         if (_id != -1) {
                             returnCount++;
+                            stampLocation(db, value);
+                            recordInsertedWeather(changes, value);
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
+                    mForecastCache.invalidate();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                endChanges(changes);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Runs the whole batch in one transaction, and sends the change notifications for all of its
+     * operations together once the transaction has committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final PendingChanges changes = new PendingChanges();
+        boolean committed = false;
+        mBatchChanges.set(changes);
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            mBatchChanges.set(null);
+            mForecastCache.invalidate();
+            if (committed) {
+                changes.dispatch(db, getContext().getContentResolver());
+            }
+        }
+    }
+
+    // Changes made inside applyBatch are collected until the batch commits; anything else is
+    // dispatched as soon as the operation is done.
+    private PendingChanges beginChanges() {
+        PendingChanges batch = mBatchChanges.get();
+        return null != batch ? batch : new PendingChanges();
+    }
+
+    private void endChanges(PendingChanges changes) {
+        if (changes != mBatchChanges.get()) {
+            changes.dispatch(mOpenHelper.getWritableDatabase(), getContext().getContentResolver());
+        }
+    }
+
+    private void discardChanges(PendingChanges changes) {
+        if (changes != mBatchChanges.get()) {
+            changes.clear();
+        }
+    }
+
+    private static void recordInsertedWeather(PendingChanges changes, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (null == locationId || null == date) {
+            changes.allWeatherChanged();
+        } else {
+            changes.weatherChanged(locationId, date);
+        }
+    }
+
+    /*
+        Finds out which (location, date) pairs an update or delete is about to touch, so that
+        only the observers of those are woken up.  Gives up and notifies everything if the write
+        is too broad to be worth scoping.
+     */
+    private static void recordAffectedWeather(SQLiteDatabase db, PendingChanges changes,
+                                              String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(true,
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null,
+                Integer.toString(MAX_SCOPED_CHANGES + 1));
+        try {
+            if (cursor.getCount() > MAX_SCOPED_CHANGES) {
+                changes.allWeatherChanged();
+                return;
+            }
+            while (cursor.moveToNext()) {
+                changes.weatherChanged(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the number of cached-forecast lookups that were answered from memory.
+     */
+    public long getForecastCacheHits() {
+        return mForecastCache.getHitCount();
+    }
+
+    /**
+     * @return the number of cached-forecast lookups that had to go to the database.
+     */
+    public long getForecastCacheMisses() {
+        return mForecastCache.getMissCount();
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
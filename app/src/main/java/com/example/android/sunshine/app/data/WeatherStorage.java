@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How weather rows are laid out on disk (since database version 4), and how the provider
+ * translates between that and the columns of the contract.
+ *
+ * Measurements are stored as integers in tenths of their unit, which SQLite packs into one to
+ * three bytes instead of an eight byte REAL; one decimal is all the app ever shows.  The short
+ * description is stored once in the weather_condition dictionary and referenced by id.
+ *
+ * Nothing outside the data package sees any of this: writes are encoded by {@link #encode}, and
+ * queries go through the projection maps built here, which decode every column back to the
+ * name and type the contract promises.
+ */
+final class WeatherStorage {
+
+    // The dictionary of short descriptions ("Clear", "Rain", ...).  Rows are never deleted;
+    // the set of descriptions the API uses is small and fixed.
+    static final String CONDITION_TABLE_NAME = "weather_condition";
+    static final String CONDITION_COLUMN_ID = BaseColumns._ID;
+    static final String CONDITION_COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+
+    // Column of the weather table referencing the dictionary.  Replaces the short_desc column.
+    static final String COLUMN_CONDITION_KEY = "condition_id";
+
+    // Stored value = Math.round(value * SCALE)
+    static final int SCALE = 10;
+
+    // The weather columns stored scaled
+    static final String[] SCALED_COLUMNS = {
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // What a projection asks for when it asks for everything, in the order "SELECT *" used to
+    // return the columns.
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_FETCHED_AT,
+            WeatherEntry.COLUMN_SOURCE_VERSION
+    };
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_FETCHED_AT,
+            LocationEntry.COLUMN_SOURCE_VERSION
+    };
+
+    static final String[] ALL_WEATHER_COLUMNS = qualify(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS);
+
+    static final String[] ALL_JOINED_COLUMNS;
+
+    static {
+        String[] location = qualify(LocationEntry.TABLE_NAME, LOCATION_COLUMNS);
+        ALL_JOINED_COLUMNS = new String[ALL_WEATHER_COLUMNS.length + location.length];
+        System.arraycopy(ALL_WEATHER_COLUMNS, 0, ALL_JOINED_COLUMNS, 0, ALL_WEATHER_COLUMNS.length);
+        System.arraycopy(location, 0, ALL_JOINED_COLUMNS, ALL_WEATHER_COLUMNS.length,
+                location.length);
+    }
+
+    // A string literal in SQL, with '' as an escaped quote
+    private static final Pattern SELECTION_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    // A name, bare or quoted, and whether it is called as a function
+    private static final Pattern SELECTION_NAME =
+            Pattern.compile("[\"`\\[]?([A-Za-z_][A-Za-z0-9_]*)[\"`\\]]?\\s*(\\()?");
+
+    private WeatherStorage() {
+    }
+
+    /**
+     * @return SQL turning a stored (scaled) expression back into the contract's unit.
+     */
+    static String decode(String storedExpression) {
+        return storedExpression + " / " + SCALE + ".0";
+    }
+
+    /**
+     * @return a projection map for queries on the weather table alone.
+     */
+    static HashMap<String, String> buildWeatherProjectionMap() {
+        HashMap<String, String> map = new HashMap<String, String>();
+        putWeatherColumns(map);
+        // Unambiguous as long as the location table isn't joined
+        map.put(WeatherEntry._ID, WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID);
+        return map;
+    }
+
+    /**
+     * @return a projection map for queries on weather INNER JOIN location.  "_id" is left out
+     * on purpose, as it would be ambiguous.  The bare names of the freshness columns, which
+     * both tables have, mean the weather row's.
+     */
+    static HashMap<String, String> buildJoinedProjectionMap() {
+        HashMap<String, String> map = new HashMap<String, String>();
+        putWeatherColumns(map);
+        for (String column : LOCATION_COLUMNS) {
+            String qualified = LocationEntry.TABLE_NAME + "." + column;
+            map.put(qualified, qualified);
+            if (!column.equals(LocationEntry._ID) && !map.containsKey(column)) {
+                map.put(column, qualified);
+            }
+        }
+        return map;
+    }
+
+    // Every weather column, by bare and by qualified name, decoded where needed
+    private static void putWeatherColumns(Map<String, String> map) {
+        for (String column : WEATHER_COLUMNS) {
+            String qualified = WeatherEntry.TABLE_NAME + "." + column;
+            String sql;
+            if (column.equals(WeatherEntry.COLUMN_SHORT_DESC)) {
+                // A primary key lookup per row; cheaper than the join would be to plan, and it
+                // keeps "_id" in callers' selections unambiguous.
+                sql = "(SELECT " + CONDITION_COLUMN_SHORT_DESC + " FROM " + CONDITION_TABLE_NAME +
+                        " WHERE " + CONDITION_TABLE_NAME + "." + CONDITION_COLUMN_ID + " = " +
+                        WeatherEntry.TABLE_NAME + "." + COLUMN_CONDITION_KEY + ") AS " + column;
+            } else if (isScaled(column)) {
+                sql = decode(qualified) + " AS " + column;
+            } else {
+                sql = qualified;
+            }
+            map.put(qualified, sql);
+            if (!column.equals(WeatherEntry._ID)) {
+                map.put(column, sql);
+            }
+        }
+    }
+
+    /**
+     * Converts weather values as the contract describes them into the stored layout, adding
+     * the description to the dictionary if it is new.  Columns that aren't present are left
+     * out, so this works for partial updates too.
+     *
+     * @param conditionIds description to dictionary id, shared between the rows of one write.
+     *                     May be null.
+     * @return a new ContentValues; {@code values} is left alone.
+     */
+    static ContentValues encode(SQLiteDatabase db, ContentValues values,
+                                HashMap<String, Long> conditionIds) {
+        ContentValues stored = new ContentValues(values);
+        for (String column : SCALED_COLUMNS) {
+            if (!stored.containsKey(column)) continue;
+            Double value = values.getAsDouble(column);
+            if (null == value) {
+                stored.putNull(column);
+            } else {
+                stored.put(column, Math.round(value * SCALE));
+            }
+        }
+        if (stored.containsKey(WeatherEntry.COLUMN_SHORT_DESC)) {
+            String description = stored.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+            stored.remove(WeatherEntry.COLUMN_SHORT_DESC);
+            if (null == description) {
+                stored.putNull(COLUMN_CONDITION_KEY);
+            } else {
+                stored.put(COLUMN_CONDITION_KEY, getConditionId(db, description, conditionIds));
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @return the dictionary id of a description, inserting it if it isn't there yet.
+     */
+    static long getConditionId(SQLiteDatabase db, String description,
+                               HashMap<String, Long> conditionIds) {
+        Long known = null == conditionIds ? null : conditionIds.get(description);
+        if (null != known) return known;
+
+        long id;
+        Cursor cursor = db.query(CONDITION_TABLE_NAME,
+                new String[]{CONDITION_COLUMN_ID},
+                CONDITION_COLUMN_SHORT_DESC + " = ?",
+                new String[]{description},
+                null,
+                null,
+                null);
+        try {
+            id = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+        if (id == -1) {
+            ContentValues condition = new ContentValues();
+            condition.put(CONDITION_COLUMN_SHORT_DESC, description);
+            id = db.insert(CONDITION_TABLE_NAME, null, condition);
+            if (id == -1) {
+                throw new android.database.SQLException(
+                        "Failed to add '" + description + "' to " + CONDITION_TABLE_NAME);
+            }
+        }
+        if (null != conditionIds) {
+            conditionIds.put(description, id);
+        }
+        return id;
+    }
+
+    /**
+     * Refuses a caller's selection that mentions a column stored encoded (a scaled measurement
+     * or the short description).  The selection runs against the stored layout, so "max > 30"
+     * would compare against tenths and "short_desc" doesn't exist; failing beats wrong rows.
+     * String literals, and names called as functions (max(a, b)), don't count.
+     *
+     * @throws IllegalArgumentException if the selection mentions such a column.
+     */
+    static void checkSelection(String selection) {
+        if (null == selection) return;
+        Matcher matcher = SELECTION_NAME.matcher(
+                SELECTION_LITERAL.matcher(selection).replaceAll("''"));
+        while (matcher.find()) {
+            String name = matcher.group(1).toLowerCase(Locale.US);
+            if (null != matcher.group(2)) continue;
+            if (isScaled(name) || name.equals(WeatherEntry.COLUMN_SHORT_DESC)) {
+                throw new IllegalArgumentException("Selections can't use " + name +
+                        ", which is stored encoded; select on the other columns and filter " +
+                        "the rows: " + selection);
+            }
+        }
+    }
+
+    private static boolean isScaled(String column) {
+        for (String scaled : SCALED_COLUMNS) {
+            if (scaled.equals(column)) return true;
+        }
+        return false;
+    }
+
+    private static String[] qualify(String table, String[] columns) {
+        String[] qualified = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            qualified[i] = table + "." + columns[i];
+        }
+        return qualified;
+    }
+}
@@ -1,13 +1,12 @@
 package com.example.android.sunshine.app.wear;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.CurrentConditions;
+import com.example.android.sunshine.app.data.Freshness;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -27,21 +26,11 @@ public class WearDataExchangeHandler implements
     private GoogleApiClient mGoogleApiClient;
     private Context mContext;
 
-    private static final String[] WEAR_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-
     private static final String WEATHER_FORECAST_PATH = "/Weather/Forecast";
     private static final String WEATHER_ID_KEY = "WEATHER_ID";
     private static final String WEATHER_TEMP_LOW_KEY = "WEATHER_TEMP_LOW";
     private static final String WEATHER_TEMP_HIGH_KEY = "WEATHER_TEMP_HIGH";
+    private static final String WEATHER_FETCHED_AT_KEY = "WEATHER_FETCHED_AT";
     private static final String WEATHER_FORCE_UPDATE_KEY = "WEATHER_FORCE_UPDATE";
     private static final String TAG = "WearDataExchangeHandler";
 
@@ -59,36 +48,39 @@ public class WearDataExchangeHandler implements
     public void pushWeatherUpdate(boolean forceUpdate) {
         String locationQuery = Utility.getPreferredLocation(mContext);
 
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        // Get cursor for today and the preferred location
-        Cursor cursor = mContext.getContentResolver().query(weatherUri, WEAR_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-
-            String formattedLow = Utility.formatTemperature(mContext, low);
-            String formattedHigh = Utility.formatTemperature(mContext, high);
-
-            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_FORECAST_PATH);
-
-            putDataMapRequest.getDataMap().putInt(WEATHER_ID_KEY, weatherId);
-            putDataMapRequest.getDataMap().putString(WEATHER_TEMP_LOW_KEY, formattedLow);
-            putDataMapRequest.getDataMap().putString(WEATHER_TEMP_HIGH_KEY, formattedHigh);
-
-            // Let's verify if we have to force the  update (even if the latest data sent is the same,
-            // we want the DataApi to resend it)
-            if (forceUpdate){
-                Log.d(TAG, "pushWeatherUpdate: forcing update");
-                putDataMapRequest.getDataMap().putLong(WEATHER_FORCE_UPDATE_KEY,
-                        System.currentTimeMillis());
+        // Get today's conditions for the preferred location
+        CurrentConditions conditions =
+                CurrentConditions.get(mContext, locationQuery, System.currentTimeMillis());
+        if (null == conditions) {
+            return;
+        }
+        int weatherId = conditions.weatherId;
+        double high = conditions.maxTemp;
+        double low = conditions.minTemp;
+
+        String formattedLow = Utility.formatTemperature(mContext, low);
+        String formattedHigh = Utility.formatTemperature(mContext, high);
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_FORECAST_PATH);
+
+        putDataMapRequest.getDataMap().putInt(WEATHER_ID_KEY, weatherId);
+        putDataMapRequest.getDataMap().putString(WEATHER_TEMP_LOW_KEY, formattedLow);
+        putDataMapRequest.getDataMap().putString(WEATHER_TEMP_HIGH_KEY, formattedHigh);
+        // Changes with every fetch and only then: a new sync always reaches the watch, pushing
+        // the same fetch twice doesn't, and the watch knows how old what it shows is.
+        putDataMapRequest.getDataMap().putLong(WEATHER_FETCHED_AT_KEY,
+                Freshness.get(mContext, locationQuery).fetchedAt);
+
+        // Let's verify if we have to force the  update (even if the latest data sent is the same,
+        // we want the DataApi to resend it)
+        if (forceUpdate){
+            Log.d(TAG, "pushWeatherUpdate: forcing update");
+            putDataMapRequest.getDataMap().putLong(WEATHER_FORCE_UPDATE_KEY,
+                    System.currentTimeMillis());
 
-            }
-            Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest())
-                    .setResultCallback(this);
         }
+        Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest())
+                .setResultCallback(this);
     }
 
     @Override
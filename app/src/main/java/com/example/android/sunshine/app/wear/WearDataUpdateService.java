@@ -2,6 +2,9 @@ package com.example.android.sunshine.app.wear;
 
 import android.util.Log;
 
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.Freshness;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.WearableListenerService;
@@ -21,11 +24,20 @@ public class WearDataUpdateService extends WearableListenerService {
             if (dataEvent.getType() == DataEvent.TYPE_CHANGED){
                 String path = dataEvent.getDataItem().getUri().getPath();
                 if (path.equals(WEATHER_FORECAST_UPDATE_PATH)){
-                    Log.d(TAG, "onDataChanged: Requesting sync");
+                    Freshness freshness =
+                            Freshness.get(this, Utility.getPreferredLocation(this));
+                    if (!freshness.isFresh(SunshineSyncAdapter.SYNC_INTERVAL * 1000L)) {
+                        // Missed a periodic sync; the sync pushes the new weather when it's done
+                        Log.d(TAG, "onDataChanged: weather is stale, requesting sync");
+                        SunshineSyncAdapter.syncImmediately(this);
+                        continue;
+                    }
+                    Log.d(TAG, "onDataChanged: resending weather");
                     WearDataExchangeHandler wearDataExchangeHandler =
                             new WearDataExchangeHandler(this);
 
-                    // Refresh with fresh data (force update)
+                    // The watch asked because it has nothing recent; resend what we have even
+                    // if it's the item it already got (force update)
                     wearDataExchangeHandler.pushWeatherUpdate(true);
                 }
             }
@@ -7,6 +7,7 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
@@ -17,6 +18,7 @@ import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 import java.util.concurrent.ExecutionException;
 
@@ -54,17 +56,19 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
+                closeData();
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                // Exactly the days a sync fetches, from today: no older history is ever shown
+                long startDate = System.currentTimeMillis();
+                long endDate = startDate +
+                        (SunshineSyncAdapter.FORECAST_DAYS - 1) * DateUtils.DAY_IN_MILLIS;
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+                        .buildWeatherLocationWithDateRange(location, startDate, endDate);
                 data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
@@ -73,14 +77,22 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 Binder.restoreCallingIdentity(identityToken);
             }
 
-            @Override
-            public void onDestroy() {
+            private boolean moveToPosition(int position) {
+                return data != null && data.moveToPosition(position);
+            }
+
+            private void closeData() {
                 if (data != null) {
                     data.close();
                     data = null;
                 }
             }
 
+            @Override
+            public void onDestroy() {
+                closeData();
+            }
+
             @Override
             public int getCount() {
                 return data == null ? 0 : data.getCount();
@@ -88,8 +100,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                if (position == AdapterView.INVALID_POSITION || !moveToPosition(position)) {
                     return null;
                 }
                 RemoteViews views = new RemoteViews(getPackageName(),
@@ -161,7 +172,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
+                if (moveToPosition(position))
                     return data.getLong(INDEX_WEATHER_ID);
                 return position;
             }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.conditions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The table lookups of {@link WeatherConditions} against the if chains and switch they
+ * replaced (copied below, returning the same indexes), over a shuffled mix of every known
+ * condition code and a few unknown ones, so the branch predictor can't learn the order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConditionLookupBenchmark {
+
+    private static final int CODES = 4096;
+
+    private int[] mCodes;
+
+    @Setup
+    public void setUp() {
+        int[] known = new int[WeatherConditions.DESCRIPTION_COUNT + 4];
+        known[0] = 211;
+        known[1] = 301;
+        for (int i = 2; i < WeatherConditions.DESCRIPTION_COUNT; i++) {
+            known[i] = Integer.parseInt(WeatherConditions.descriptionKey(i));
+        }
+        known[known.length - 4] = 0;
+        known[known.length - 3] = 199;
+        known[known.length - 2] = 999;
+        known[known.length - 1] = 1000;
+
+        Random random = new Random(42);
+        mCodes = new int[CODES];
+        for (int i = 0; i < CODES; i++) {
+            mCodes[i] = known[random.nextInt(known.length)];
+        }
+    }
+
+    @Benchmark
+    public void kindFromIfChain(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(kindFromIfChain(code));
+        }
+    }
+
+    @Benchmark
+    public void kindFromTable(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.kind(code));
+        }
+    }
+
+    @Benchmark
+    public void descriptionFromSwitch(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(descriptionFromSwitch(code));
+        }
+    }
+
+    @Benchmark
+    public void descriptionFromTable(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.description(code));
+        }
+    }
+
+    @Benchmark
+    public void imageUrlFromIfChain(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(imageUrlFromIfChain(code));
+        }
+    }
+
+    @Benchmark
+    public void imageUrlFromTable(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.imageUrl(code));
+        }
+    }
+
+    // Utility.getIconResourceForWeatherCondition, before the tables
+    private static int kindFromIfChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return WeatherConditions.KIND_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return WeatherConditions.KIND_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return WeatherConditions.KIND_RAIN;
+        } else if (weatherId == 511) {
+            return WeatherConditions.KIND_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return WeatherConditions.KIND_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return WeatherConditions.KIND_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return WeatherConditions.KIND_FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return WeatherConditions.KIND_STORM;
+        } else if (weatherId == 800) {
+            return WeatherConditions.KIND_CLEAR;
+        } else if (weatherId == 801) {
+            return WeatherConditions.KIND_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return WeatherConditions.KIND_CLOUDS;
+        }
+        return WeatherConditions.KIND_UNKNOWN;
+    }
+
+    // Utility.getStringForWeatherCondition, before the tables, plus the 521 and 522 it missed
+    private static int descriptionFromSwitch(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return 0;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return 1;
+        } else switch (weatherId) {
+            case 500: return 2;
+            case 501: return 3;
+            case 502: return 4;
+            case 503: return 5;
+            case 504: return 6;
+            case 511: return 7;
+            case 520: return 8;
+            case 521: return 9;
+            case 522: return 10;
+            case 531: return 11;
+            case 600: return 12;
+            case 601: return 13;
+            case 602: return 14;
+            case 611: return 15;
+            case 612: return 16;
+            case 615: return 17;
+            case 616: return 18;
+            case 620: return 19;
+            case 621: return 20;
+            case 622: return 21;
+            case 701: return 22;
+            case 711: return 23;
+            case 721: return 24;
+            case 731: return 25;
+            case 741: return 26;
+            case 751: return 27;
+            case 761: return 28;
+            case 762: return 29;
+            case 771: return 30;
+            case 781: return 31;
+            case 800: return 32;
+            case 801: return 33;
+            case 802: return 34;
+            case 803: return 35;
+            case 804: return 36;
+            case 900: return 37;
+            case 901: return 38;
+            case 902: return 39;
+            case 903: return 40;
+            case 904: return 41;
+            case 905: return 42;
+            case 906: return 43;
+            case 951: return 44;
+            case 952: return 45;
+            case 953: return 46;
+            case 954: return 47;
+            case 955: return 48;
+            case 956: return 49;
+            case 957: return 50;
+            case 958: return 51;
+            case 959: return 52;
+            case 960: return 53;
+            case 961: return 54;
+            case 962: return 55;
+            default: return WeatherConditions.DESCRIPTION_UNKNOWN;
+        }
+    }
+
+    // Utility.getImageUrlForWeatherCondition, before the tables
+    private static String imageUrlFromIfChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.conditions;
+
+/**
+ * What the app and the watch face show for an OpenWeatherMap condition code, shared by both.
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ *
+ * Every lookup is a read from a table indexed by the code, built once when the class loads.
+ * This module has no resources, so a condition's icon, art and description come back as
+ * indexes (KIND_*, a description index) into tables each module keeps of its own resource
+ * ids.
+ */
+public final class WeatherConditions {
+
+    // The kinds of weather that have an icon and art of their own
+    public static final int KIND_UNKNOWN = 0;
+    public static final int KIND_STORM = 1;
+    public static final int KIND_LIGHT_RAIN = 2;
+    public static final int KIND_RAIN = 3;
+    public static final int KIND_SNOW = 4;
+    public static final int KIND_FOG = 5;
+    public static final int KIND_CLEAR = 6;
+    public static final int KIND_LIGHT_CLOUDS = 7;
+    public static final int KIND_CLOUDS = 8;
+    public static final int KIND_COUNT = 9;
+
+    // Names of the kinds in the art packs' URLs, by KIND_*
+    private static final String[] ART_NAMES = {
+            null, "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    // The descriptions, by description index.  The app's strings are condition_ and the key.
+    private static final String[] DESCRIPTION_KEYS = {
+            "2xx", "3xx",
+            "500", "501", "502", "503", "504", "511", "520", "521", "522", "531",
+            "600", "601", "602", "611", "612", "615", "616", "620", "621", "622",
+            "701", "711", "721", "731", "741", "751", "761", "762", "771", "781",
+            "800", "801", "802", "803", "804",
+            "900", "901", "902", "903", "904", "905", "906",
+            "951", "952", "953", "954", "955", "956", "957", "958", "959", "960", "961", "962"
+    };
+    public static final int DESCRIPTION_COUNT = DESCRIPTION_KEYS.length;
+    public static final int DESCRIPTION_UNKNOWN = -1;
+
+    // Wikimedia Commons photos for the background art, by image index
+    private static final String[] IMAGE_URLS = {
+            null,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+    private static final int IMAGE_THUNDERSTORM = 1;
+    private static final int IMAGE_DRIZZLE = 2;
+    private static final int IMAGE_RAIN = 3;
+    private static final int IMAGE_SNOW = 4;
+    private static final int IMAGE_FOG = 5;
+    private static final int IMAGE_DUST = 6;
+    private static final int IMAGE_CLEAR = 7;
+    private static final int IMAGE_FEW_CLOUDS = 8;
+    private static final int IMAGE_CLOUDS = 9;
+
+    // Condition codes run from 200 to 962
+    private static final int CODE_LIMIT = 1000;
+
+    private static final int[] sKinds = new int[CODE_LIMIT];
+    private static final int[] sDescriptions = new int[CODE_LIMIT];
+    private static final int[] sImages = new int[CODE_LIMIT];
+
+    static {
+        fill(sKinds, 200, 232, KIND_STORM);
+        fill(sKinds, 300, 321, KIND_LIGHT_RAIN);
+        fill(sKinds, 500, 504, KIND_RAIN);
+        fill(sKinds, 511, 511, KIND_SNOW);
+        fill(sKinds, 520, 531, KIND_RAIN);
+        fill(sKinds, 600, 622, KIND_SNOW);
+        fill(sKinds, 701, 761, KIND_FOG);
+        fill(sKinds, 781, 781, KIND_STORM);
+        fill(sKinds, 800, 800, KIND_CLEAR);
+        fill(sKinds, 801, 801, KIND_LIGHT_CLOUDS);
+        fill(sKinds, 802, 804, KIND_CLOUDS);
+
+        fill(sImages, 200, 232, IMAGE_THUNDERSTORM);
+        fill(sImages, 300, 321, IMAGE_DRIZZLE);
+        fill(sImages, 500, 504, IMAGE_RAIN);
+        fill(sImages, 511, 511, IMAGE_SNOW);
+        fill(sImages, 520, 531, IMAGE_RAIN);
+        fill(sImages, 600, 622, IMAGE_SNOW);
+        fill(sImages, 701, 761, IMAGE_FOG);
+        fill(sImages, 781, 781, IMAGE_DUST);
+        fill(sImages, 800, 800, IMAGE_CLEAR);
+        fill(sImages, 801, 801, IMAGE_FEW_CLOUDS);
+        fill(sImages, 802, 804, IMAGE_CLOUDS);
+
+        fill(sDescriptions, 0, CODE_LIMIT - 1, DESCRIPTION_UNKNOWN);
+        // Storms and drizzle are described by their group
+        fill(sDescriptions, 200, 232, 0);
+        fill(sDescriptions, 300, 321, 1);
+        for (int i = 2; i < DESCRIPTION_KEYS.length; i++) {
+            sDescriptions[Integer.parseInt(DESCRIPTION_KEYS[i])] = i;
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void fill(int[] table, int firstCode, int lastCode, int value) {
+        for (int code = firstCode; code <= lastCode; code++) {
+            table[code] = value;
+        }
+    }
+
+    /**
+     * @return the KIND_* of a condition, which picks its icon and art.  KIND_UNKNOWN if it has
+     * none.
+     */
+    public static int kind(int weatherId) {
+        return weatherId >= 0 && weatherId < CODE_LIMIT ? sKinds[weatherId] : KIND_UNKNOWN;
+    }
+
+    /**
+     * @return the index of a condition's description, from 0 to {@link #DESCRIPTION_COUNT}, or
+     * {@link #DESCRIPTION_UNKNOWN}.  A module's table of description strings is in the order of
+     * {@link #descriptionKey}.
+     */
+    public static int description(int weatherId) {
+        return weatherId >= 0 && weatherId < CODE_LIMIT ?
+                sDescriptions[weatherId] : DESCRIPTION_UNKNOWN;
+    }
+
+    /**
+     * @return the key of a description index: "2xx" and "3xx" for the storm and drizzle groups,
+     * the condition code for the others.
+     */
+    public static String descriptionKey(int description) {
+        return DESCRIPTION_KEYS[description];
+    }
+
+    /**
+     * @return the name of a condition's art in an art pack's URL format, or null if it has none.
+     */
+    public static String artName(int weatherId) {
+        return ART_NAMES[kind(weatherId)];
+    }
+
+    /**
+     * @return a URL to a photo of the condition, or null if there is none.
+     */
+    public static String imageUrl(int weatherId) {
+        return IMAGE_URLS[weatherId >= 0 && weatherId < CODE_LIMIT ? sImages[weatherId] : 0];
+    }
+}
@@ -134,6 +134,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         String mLowTemp;
         String mHighTemp;
         int mIconResource;
+        // When the phone fetched the weather shown, in milliseconds since the epoch
+        long mFetchedAt;
         String mDateToDisplay;
         Typeface mRobotoLight;
 
@@ -150,6 +152,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         private static final String WEATHER_ID_KEY = "WEATHER_ID";
         private static final String WEATHER_TEMP_LOW_KEY = "WEATHER_TEMP_LOW";
         private static final String WEATHER_TEMP_HIGH_KEY = "WEATHER_TEMP_HIGH";
+        private static final String WEATHER_FETCHED_AT_KEY = "WEATHER_FETCHED_AT";
+
+        // The phone syncs every 3 hours; only weather older than that is worth asking for
+        private static final long WEATHER_MAX_AGE_MS = TimeUnit.HOURS.toMillis(3);
 
         private static final String WEATHER_FORECAST_UPDATE_PATH = "/Weather/Update";
         private static final String WEATHER_FORECAST_UPDATE_KEY = "UPDATE_KEY";
@@ -211,13 +217,19 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mLowTemp = sp.getString(getString(R.string.pref_low_temp),"");
             mHighTemp = sp.getString(getString(R.string.pref_high_temp),"");
             mIconResource = sp.getInt(getString(R.string.pref_icon_resource), -1);
+            mFetchedAt = sp.getLong(getString(R.string.pref_fetched_at), 0);
 
 
             // Default
             mMarginRatio = getFloat(R.dimen.digital_margin_round_ratio);
 
 
-            askForWeatherUpdate();
+            long age = System.currentTimeMillis() - mFetchedAt;
+            if (mIconResource == -1 || age < 0 || age >= WEATHER_MAX_AGE_MS) {
+                askForWeatherUpdate();
+            } else {
+                Log.d(TAG, "onCreate: weather fetched " + age + " ms ago, not asking");
+            }
 
             registerReceiver();
         }
@@ -239,6 +251,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             editor.putString(getString(R.string.pref_low_temp), mLowTemp);
             editor.putString(getString(R.string.pref_high_temp),mHighTemp);
             editor.putInt(getString(R.string.pref_icon_resource), mIconResource);
+            editor.putLong(getString(R.string.pref_fetched_at), mFetchedAt);
             editor.commit();
 
             super.onDestroy();
@@ -475,6 +488,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                         mHighTemp = dataMap.getString(WEATHER_TEMP_HIGH_KEY, "");
                         mIconResource = Utils.getIconResourceForWeatherCondition(
                                 dataMap.getInt(WEATHER_ID_KEY, 0));
+                        // Missing from phones that don't send it yet: ask again next time
+                        mFetchedAt = dataMap.getLong(WEATHER_FETCHED_AT_KEY, 0);
 
                         Log.d(TAG, "Weather update received min =" + mLowTemp + ", max=" + mHighTemp
                                 + ", WeatherId=" + mIconResource);